@@ -0,0 +1,140 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.troughput;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.marekasf.troughput.histogram.Distribution;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost the runner adds to every request: {@link ThroughputRunner#registerExecution(long, long, Scenario.Action)} with
+ * its counters, the max loop and the histogram recorder, on one thread and on several contending threads.
+ * Recorded values are merged every millisecond by a sample log thread of the group, as in a real run; its score is the
+ * merge plus the pause and can be ignored. The recorder alone is measured by {@link RecorderScalingBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordingBenchmark
+{
+	private static final int VALUES = 1 << 16;  // power of two, indexed with a mask
+	private static final long SAMPLE_INTERVAL_NS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	@State(Scope.Benchmark)
+	public static class Shared
+	{
+		@Param({ "uniform", "bimodal", "heavyTailed" })
+		public Distribution distribution;
+
+		float[] values;
+		ThroughputRunner runner;
+		final AtomicLong max = new AtomicLong();
+
+		@Setup(Level.Trial)
+		public void values()
+		{
+			values = distribution.values(VALUES);
+		}
+
+		@Setup(Level.Iteration)
+		public void reset()
+		{
+			runner = new ThroughputRunner((text, t) -> {
+			});
+			runner.reset(ThroughputRunner.Builder.create(), 0);
+			max.set(0);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Local
+	{
+		int next;
+	}
+
+	@Benchmark
+	@Group("registerExecution")
+	@GroupThreads(1)
+	public void registerExecution(final Shared shared, final Local local)
+	{
+		final long now = System.nanoTime();
+		shared.runner.registerExecution(now - (long) shared.values[local.next++ & (VALUES - 1)], now, null);
+	}
+
+	@Benchmark
+	@Group("registerExecution")
+	@GroupThreads(1)
+	public void sampleLog(final Shared shared)
+	{
+		sample(shared);
+	}
+
+	@Benchmark
+	@Group("registerExecutionContended")
+	@GroupThreads(4)
+	public void registerExecutionContended(final Shared shared, final Local local)
+	{
+		registerExecution(shared, local);
+	}
+
+	@Benchmark
+	@Group("registerExecutionContended")
+	@GroupThreads(1)
+	public void sampleLogContended(final Shared shared)
+	{
+		sample(shared);
+	}
+
+	@Benchmark
+	public void max(final Shared shared, final Local local)
+	{
+		ThroughputRunner.max(shared.max, (long) shared.values[local.next++ & (VALUES - 1)]);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void maxContended(final Shared shared, final Local local)
+	{
+		max(shared, local);
+	}
+
+	/**
+	 * Merges the recorded values on a thread of its own, as the sample log does, so the recording threads' scores
+	 * do not include the merge.
+	 */
+	private static void sample(final Shared shared)
+	{
+		shared.runner.histogram.flush();
+		LockSupport.parkNanos(SAMPLE_INTERVAL_NS);
+	}
+}
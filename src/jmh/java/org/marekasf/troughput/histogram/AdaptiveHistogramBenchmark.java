@@ -0,0 +1,105 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.troughput.histogram;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of adding values to and querying a single {@link AdaptiveHistogram}.
+ * Values come from a pre-generated array, so the random generator is not measured.
+ * Queries run on a histogram already filled with <code>size</code> values, a large tree as after a long run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AdaptiveHistogramBenchmark {
+    private static final int VALUES = 1 << 16;  // power of two, indexed with a mask
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9, 99.99 };
+
+    @Param({ "uniform", "bimodal", "heavyTailed" })
+    public Distribution distribution;
+
+    @Param({ "1000000" })
+    public int size;
+
+    private float[] values;
+    private AdaptiveHistogram empty;
+    private AdaptiveHistogram filled;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        values = distribution.values(VALUES);
+        filled = new AdaptiveHistogram();
+        for (int i = 0; i < size; ++i) {
+            filled.addValue(values[i & (VALUES - 1)]);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void clear() {
+        empty = new AdaptiveHistogram();
+        next = 0;
+    }
+
+    /**
+     * Adding to a histogram growing during the iteration, as the recorder does when it drains.
+     */
+    @Benchmark
+    public void addValue() {
+        empty.addValue(values[next++ & (VALUES - 1)]);
+    }
+
+    /**
+     * Adding to a histogram that already has many values, the tree no longer grows much.
+     */
+    @Benchmark
+    public void addValueToLargeTree() {
+        filled.addValue(values[next++ & (VALUES - 1)]);
+    }
+
+    @Benchmark
+    public float getValueForPercentile() {
+        return filled.getValueForPercentile(99);
+    }
+
+    @Benchmark
+    public float getValueForFractionalPercentile() {
+        return filled.getValueForPercentile(99.9);
+    }
+
+    /**
+     * The five percentiles the runner reports, in one pass.
+     */
+    @Benchmark
+    public float[] getValuesForPercentiles() {
+        return filled.getValuesForPercentiles(PERCENTILES);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.troughput.histogram;
+
+import java.util.Random;
+
+/**
+ * Latency shapes the benchmarks record, in nanoseconds. The tree of {@link AdaptiveHistogram} splits where the data is
+ * dense, so its depth, and the cost of every operation, depends on the shape.
+ */
+public enum Distribution {
+    /** Evenly spread between 1 and 2 ms. */
+    uniform {
+        @Override
+        float next(Random random) {
+            return 1e6f + 1e6f * random.nextFloat();
+        }
+    },
+    /** Fast cache hits around 200 us and slow misses around 20 ms, nine to one. */
+    bimodal {
+        @Override
+        float next(Random random) {
+            final double mean = random.nextInt(10) == 0 ? 2e7 : 2e5;
+            return (float) Math.max(1, mean * (1 + 0.1 * random.nextGaussian()));
+        }
+    },
+    /** Pareto with shape 1.5 above 100 us, a few samples are many orders of magnitude slower. */
+    heavyTailed {
+        @Override
+        float next(Random random) {
+            return (float) (1e5 / Math.pow(1 - random.nextDouble(), 1 / 1.5));
+        }
+    };
+
+    abstract float next(Random random);
+
+    /**
+     * @return <code>size</code> values from a fixed seed, so every run records the same data.
+     */
+    public float[] values(int size) {
+        final Random random = new Random(42);
+        final float[] values = new float[size];
+        for (int i = 0; i < size; ++i) {
+            values[i] = next(random);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.troughput.histogram;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Cost of recording a value with {@link HistogramRecorder} against the synchronized {@link AdaptiveHistogram#addValue}
+ * it replaces, as the number of recording threads grows. In both groups a reader thread takes the values every
+ * millisecond, as the sample log does, so reading is not part of the recording threads' scores. The recorder's reader
+ * discards the values instead of merging them: hand-off and chunk recycling are measured, the merge is not.
+ * {@link #main(String[])} runs both groups with 1 to 32 recording threads and prints the recording cost per value.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecorderScalingBenchmark
+{
+	private static final int VALUES = 1 << 16;  // power of two, indexed with a mask
+	private static final long READ_INTERVAL_NS = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final int[] THREADS = { 1, 2, 4, 8, 16, 32 };
+
+	@State(Scope.Benchmark)
+	public static class Shared
+	{
+		@Param({ "uniform", "bimodal", "heavyTailed" })
+		public Distribution distribution;
+
+		float[] values;
+		HistogramRecorder recorder;
+		AdaptiveHistogram histogram;
+
+		@Setup(Level.Trial)
+		public void values()
+		{
+			values = distribution.values(VALUES);
+		}
+
+		@Setup(Level.Iteration)
+		public void reset()
+		{
+			recorder = new HistogramRecorder();
+			histogram = new AdaptiveHistogram();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Local
+	{
+		int next;
+	}
+
+	@Benchmark
+	@Group("recorder")
+	@GroupThreads(1)
+	public void recordValue(final Shared shared, final Local local)
+	{
+		shared.recorder.recordValue(shared.values[local.next++ & (VALUES - 1)]);
+	}
+
+	@Benchmark
+	@Group("recorder")
+	@GroupThreads(1)
+	public void readRecorder(final Shared shared)
+	{
+		// merging is slower than recording at full speed, a merging reader would fall behind without bound
+		shared.recorder.reset();
+		LockSupport.parkNanos(READ_INTERVAL_NS);
+	}
+
+	@Benchmark
+	@Group("synchronizedHistogram")
+	@GroupThreads(1)
+	public void addValue(final Shared shared, final Local local)
+	{
+		shared.histogram.addValue(shared.values[local.next++ & (VALUES - 1)]);
+	}
+
+	@Benchmark
+	@Group("synchronizedHistogram")
+	@GroupThreads(1)
+	public void readHistogram(final Shared shared)
+	{
+		shared.histogram.getValueForPercentile(99);
+		LockSupport.parkNanos(READ_INTERVAL_NS);
+	}
+
+	/**
+	 * Sweeps the number of recording threads, one reader each, on the given distribution (default uniform).
+	 */
+	public static void main(final String[] args) throws RunnerException
+	{
+		final String distribution = args.length > 0 && !args[0].startsWith(".") ? args[0] : "uniform";
+		final StringBuilder table = new StringBuilder("threads  recorder(ns/op)  synchronized(ns/op)\n");
+		for (final int threads : THREADS)
+		{
+			final Collection<RunResult> results = new Runner(new OptionsBuilder() //
+					.include(RecorderScalingBenchmark.class.getName()) //
+					.param("distribution", distribution) //
+					.threadGroups(threads, 1) //
+					.build()).run();
+			double recorder = Double.NaN;
+			double synchronizedHistogram = Double.NaN;
+			for (final RunResult result : results)
+			{
+				if (result.getSecondaryResults().containsKey("recordValue"))
+				{
+					recorder = result.getSecondaryResults().get("recordValue").getScore();
+				}
+				if (result.getSecondaryResults().containsKey("addValue"))
+				{
+					synchronizedHistogram = result.getSecondaryResults().get("addValue").getScore();
+				}
+			}
+			table.append(String.format("%7d  %15.1f  %19.1f%n", threads, recorder, synchronizedHistogram));
+		}
+		System.out.print(table);
+	}
+}
@@ -0,0 +1,199 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.troughput;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Search for the concurrency with the highest throughput that still meets a latency percentile target. Like a
+ * {@link LoadProfile} it runs stages of <code>testTimeInSeconds</code> one after another, but every stage is chosen from
+ * the results of the previous ones: the number of threads (or the open-loop request rate) doubles while the target is
+ * met and throughput keeps rising, then a binary search between the last good and the first bad stage narrows it down.
+ * A stage is bad if it misses the target or does not raise throughput by at least <code>minThroughputGain</code>, so
+ * the search prefers the lowest concurrency reaching the plateau.
+ */
+public class AutoTune
+{
+	private final boolean rate;
+	private final double min;
+	private final double max;
+	private double percentile = 99;
+	private long limitNs = 0;
+	private double minThroughputGain = 0.05;
+	private double rateTolerance = 0.05;
+	private int maxStages = 16;
+
+	private AutoTune(final boolean rate, final double min, final double max)
+	{
+		this.rate = rate;
+		this.min = min;
+		this.max = max;
+	}
+
+	/**
+	 * Closed-loop search over the number of threads, from <code>min</code> up to <code>max</code>.
+	 */
+	public static AutoTune threads(final int min, final int max)
+	{
+		return new AutoTune(false, Math.max(min, 1), max);
+	}
+
+	/**
+	 * Open-loop search over the request rate, from <code>min</code> up to <code>max</code> requests per second.
+	 * Builder threads should be enough to sustain the highest rate.
+	 */
+	public static AutoTune rate(final double min, final double max)
+	{
+		return new AutoTune(true, min, max);
+	}
+
+	/**
+	 * Latency target every chosen stage must meet, e.g. <code>target(99, 20, MILLISECONDS)</code>. Required.
+	 */
+	public AutoTune target(final double percentile, final long limit, final TimeUnit unit)
+	{
+		this.percentile = percentile;
+		this.limitNs = unit.toNanos(limit);
+		return this;
+	}
+
+	/**
+	 * Relative throughput gain a higher concurrency must bring to be preferred. Default 5%.
+	 */
+	public AutoTune minThroughputGain(final double minThroughputGain)
+	{
+		this.minThroughputGain = minThroughputGain;
+		return this;
+	}
+
+	/**
+	 * Relative width of the rate range at which an open-loop search stops. Default 5%. A thread search stops when
+	 * neighbouring thread counts are left.
+	 */
+	public AutoTune rateTolerance(final double rateTolerance)
+	{
+		this.rateTolerance = rateTolerance;
+		return this;
+	}
+
+	/**
+	 * Maximum number of stages. Default 16.
+	 */
+	public AutoTune maxStages(final int maxStages)
+	{
+		this.maxStages = maxStages;
+		return this;
+	}
+
+	public boolean isRate()
+	{
+		return rate;
+	}
+
+	public double getPercentile()
+	{
+		return percentile;
+	}
+
+	public long getLimitNs()
+	{
+		return limitNs;
+	}
+
+	public boolean meets(final ThroughputResult stage)
+	{
+		return stage.getValueForPercentile(percentile) <= limitNs;
+	}
+
+	/**
+	 * @return index of the stage with the highest request rate meeting the target, <code>-1</code> if none does.
+	 */
+	public int bestStage(final List<ThroughputResult> stages)
+	{
+		int best = -1;
+		for (int i = 0; i < stages.size(); ++i)
+		{
+			final ThroughputResult stage = stages.get(i);
+			if (meets(stage) && (best < 0 || stage.getRequestRate() > stages.get(best).getRequestRate()))
+			{
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	Search start()
+	{
+		if (limitNs <= 0)
+		{
+			throw new IllegalStateException("Auto-tune needs a latency target");
+		}
+		return new Search();
+	}
+
+	/**
+	 * State of a single search.
+	 */
+	class Search
+	{
+		private double current = min;
+		private double good = Double.NaN;  // highest concurrency that met the target and raised throughput
+		private double goodRate = 0;
+		private double bad = Double.NaN;   // lowest concurrency that did not
+		private boolean growing = true;
+		private int stages = 0;
+
+		/**
+		 * @return the concurrency of the first stage.
+		 */
+		double first()
+		{
+			return current;
+		}
+
+		/**
+		 * @return the concurrency of the next stage, <code>NaN</code> if the search is over.
+		 */
+		double next(final ThroughputResult stage)
+		{
+			++stages;
+			if (meets(stage) && stage.getRequestRate() > goodRate * (1 + minThroughputGain))
+			{
+				good = current;
+				goodRate = stage.getRequestRate();
+			}
+			else
+			{
+				bad = Double.isNaN(bad) ? current : Math.min(bad, current);
+				growing = false;
+			}
+
+			if (stages >= maxStages)
+			{
+				return Double.NaN;
+			}
+			if (growing)
+			{
+				return current >= max ? Double.NaN : (current = Math.min(2 * current, max));
+			}
+			if (Double.isNaN(good) || (rate ? bad - good <= rateTolerance * good : bad - good <= 1))
+			{
+				return Double.NaN;
+			}
+			current = rate ? (good + bad) / 2 : Math.floor((good + bad) / 2);
+			return current;
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.troughput;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.ChartUtilities;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.XYSeriesCollection;
+import org.marekasf.troughput.histogram.AdaptiveHistogram;
+
+/**
+ * Writes the percentile curve and the latency over time of a run as PNG and SVG files, without an AWT display.
+ * The values are taken from the histograms right away, the files are written by a background thread, so rendering does
+ * not delay the end of the run. The thread is not a daemon: a JVM exiting after the run waits for pending charts.
+ */
+class ChartRenderer
+{
+	private static final int WIDTH = 800;
+	private static final int HEIGHT = 500;
+
+	private static final ThreadPoolExecutor RENDERER = new ThreadPoolExecutor(1, 1, 5, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<>(), r -> new Thread(r, "throughput-chart-renderer"));
+
+	static
+	{
+		RENDERER.allowCoreThreadTimeOut(true);
+	}
+
+	private final File directory;
+	private final double scale;
+	private final String unit;
+	private final List<double[]> timeline = new ArrayList<>();
+
+	/**
+	 * @param scale multiplier from nanoseconds to <code>unit</code>.
+	 */
+	ChartRenderer(final File directory, final double scale, final String unit)
+	{
+		this.directory = directory;
+		this.scale = scale;
+		this.unit = unit;
+	}
+
+	/**
+	 * Adds the p50, p99 and max of an interval ending <code>seconds</code> after the start to the latency over time chart.
+	 */
+	void interval(final double seconds, final AdaptiveHistogram interval)
+	{
+		final float[] values = interval.getValuesForPercentiles(50, 99, 100);
+		timeline.add(new double[] { seconds, values[0] * scale, values[1] * scale, values[2] * scale });
+	}
+
+	/**
+	 * @return the files written, or the failure.
+	 */
+	CompletableFuture<List<File>> render(final String title, final AdaptiveHistogram histogram)
+	{
+		final double[] percentiles = IntStream.rangeClosed(0, 100).asDoubleStream().toArray();
+		final float[] values = histogram.getValuesForPercentiles(percentiles);
+		final double[] scaled = IntStream.range(0, values.length).mapToDouble(i -> values[i] * scale).toArray();
+		final List<double[]> points = new ArrayList<>(timeline);
+		final String prefix = "throughput-" + new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date());
+
+		final CompletableFuture<List<File>> files = new CompletableFuture<>();
+		RENDERER.execute(() -> {
+			try
+			{
+				files.complete(write(prefix, title, percentiles, scaled, points));
+			}
+			catch (final Throwable t)
+			{
+				files.completeExceptionally(t);
+			}
+		});
+		return files;
+	}
+
+	private List<File> write(final String prefix, final String title, final double[] percentiles, final double[] values,
+			final List<double[]> points) throws IOException
+	{
+		Files.createDirectories(directory.toPath());
+		final List<File> files = new ArrayList<>();
+		final String yLabel = "time [" + unit + "]";
+
+		final XYSeries curve = new XYSeries(title);
+		IntStream.range(0, percentiles.length).forEach(i -> curve.add(percentiles[i], values[i]));
+		files.add(png(prefix + "-percentiles.png", ChartFactory.createXYLineChart("Percentiles " + title, "percentile", yLabel,
+				new XYSeriesCollection(curve), PlotOrientation.VERTICAL, true, false, false)));
+		files.add(svg(prefix + "-percentiles.svg", new SvgChart("Percentiles " + title, "percentile", yLabel) //
+				.series(title, percentiles, values)));
+
+		if (!points.isEmpty())
+		{
+			final String[] names = { "p50", "p99", "max" };
+			final XYSeriesCollection series = new XYSeriesCollection();
+			final SvgChart svg = new SvgChart("Latency over time " + title, "time [s]", yLabel);
+			final double[] seconds = points.stream().mapToDouble(p -> p[0]).toArray();
+			for (int s = 0; s < names.length; ++s)
+			{
+				final int column = s + 1;
+				final XYSeries line = new XYSeries(names[s]);
+				points.forEach(p -> line.add(p[0], p[column]));
+				series.addSeries(line);
+				svg.series(names[s], seconds, points.stream().mapToDouble(p -> p[column]).toArray());
+			}
+			files.add(png(prefix + "-latency.png", ChartFactory.createXYLineChart("Latency over time " + title, "time [s]",
+					yLabel, series, PlotOrientation.VERTICAL, true, false, false)));
+			files.add(svg(prefix + "-latency.svg", svg));
+		}
+		return files;
+	}
+
+	private File png(final String name, final JFreeChart chart) throws IOException
+	{
+		final File tmp = new File(directory, name + ".tmp");
+		ChartUtilities.saveChartAsPNG(tmp, chart, WIDTH, HEIGHT);
+		return publish(tmp, name);
+	}
+
+	private File svg(final String name, final SvgChart chart) throws IOException
+	{
+		final File tmp = new File(directory, name + ".tmp");
+		Files.write(tmp.toPath(), chart.render().getBytes(StandardCharsets.UTF_8));
+		return publish(tmp, name);
+	}
+
+	// renames a completely written file, so whoever watches the directory never sees a partial chart
+	private File publish(final File tmp, final String name) throws IOException
+	{
+		final File file = new File(directory, name);
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return file;
+	}
+}
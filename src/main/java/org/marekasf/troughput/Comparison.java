@@ -0,0 +1,261 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.troughput;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.marekasf.troughput.histogram.AdaptiveHistogram;
+import org.marekasf.troughput.histogram.Cell;
+
+/**
+ * Comparison of a result with a baseline, e.g. the same test on the previous build.
+ * Throughput is compared with Welch's t-test on the request rates of the <code>logSleepSeconds</code> samples, giving a
+ * 95% confidence interval of the difference. Latency is compared with the two-sample Kolmogorov-Smirnov test on the
+ * histograms at the 5% level. Large runs make tiny differences significant, so a metric is only reported faster or
+ * slower if its change is also at least 5%.
+ */
+public class Comparison
+{
+	public enum Verdict
+	{
+		FASTER, SLOWER, NO_SIGNIFICANT_CHANGE;
+
+		@Override
+		public String toString()
+		{
+			return name().toLowerCase().replace('_', ' ');
+		}
+	}
+
+	/**
+	 * Latency percentiles that get a verdict.
+	 */
+	public static final double[] PERCENTILES = { 50, 99, 99.9 };
+
+	private static final String[] LABELS = { "p50", "p99", "p99.9" };
+	private static final double MIN_EFFECT = 0.05;
+	// Kolmogorov-Smirnov coefficient c(alpha) for alpha = 0.05
+	private static final double KS_COEFFICIENT = 1.358;
+	// two-sided 95% quantiles of Student's t distribution, by degrees of freedom 1 to 30
+	private static final double[] T_975 = { 12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228, 2.201,
+			2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086, 2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052,
+			2.048, 2.045, 2.042 };
+
+	private final ThroughputResult baseline;
+	private final ThroughputResult current;
+	private final double rateDifferenceLow;
+	private final double rateDifferenceHigh;
+	private final Verdict throughput;
+	private final double ksStatistic;
+	private final double ksCriticalValue;
+	private final float[] baselinePercentiles;
+	private final float[] currentPercentiles;
+	private final Verdict[] latency = new Verdict[PERCENTILES.length];
+
+	Comparison(final ThroughputResult baseline, final ThroughputResult current)
+	{
+		this.baseline = baseline;
+		this.current = current;
+
+		final double[] base = baseline.getSampleRates();
+		final double[] now = current.getSampleRates();
+		if (base.length < 2 || now.length < 2)
+		{
+			rateDifferenceLow = Double.NaN;
+			rateDifferenceHigh = Double.NaN;
+			throughput = Verdict.NO_SIGNIFICANT_CHANGE;
+		}
+		else
+		{
+			final double baseVariance = variance(base) / base.length;
+			final double nowVariance = variance(now) / now.length;
+			final double se = Math.sqrt(baseVariance + nowVariance);
+			// Welch-Satterthwaite degrees of freedom
+			final double df = se == 0 ? Double.MAX_VALUE : Math.pow(se, 4) / (baseVariance * baseVariance / (base.length - 1)
+					+ nowVariance * nowVariance / (now.length - 1));
+			final double difference = mean(now) - mean(base);
+			rateDifferenceLow = difference - t975(df) * se;
+			rateDifferenceHigh = difference + t975(df) * se;
+			final boolean large = Math.abs(difference) >= MIN_EFFECT * mean(base);
+			throughput = !large || (rateDifferenceLow <= 0 && rateDifferenceHigh >= 0) ? Verdict.NO_SIGNIFICANT_CHANGE
+					: difference > 0 ? Verdict.FASTER : Verdict.SLOWER;
+		}
+
+		final List<Cell> baseCells = baseline.getHistogram().toTable();
+		final List<Cell> nowCells = current.getHistogram().toTable();
+		final long n = baseCells.stream().mapToLong(c -> c.count).sum();
+		final long m = nowCells.stream().mapToLong(c -> c.count).sum();
+		ksStatistic = n == 0 || m == 0 ? 0 : ksStatistic(baseCells, n, nowCells, m);
+		ksCriticalValue = n == 0 || m == 0 ? Double.NaN : KS_COEFFICIENT * Math.sqrt((double) (n + m) / n / m);
+		baselinePercentiles = baseline.getHistogram().getValuesForPercentiles(PERCENTILES);
+		currentPercentiles = current.getHistogram().getValuesForPercentiles(PERCENTILES);
+		for (int i = 0; i < PERCENTILES.length; ++i)
+		{
+			final double change = currentPercentiles[i] - baselinePercentiles[i];
+			final boolean large = Math.abs(change) >= MIN_EFFECT * baselinePercentiles[i];
+			latency[i] = !(ksStatistic > ksCriticalValue) || !large ? Verdict.NO_SIGNIFICANT_CHANGE
+					: change > 0 ? Verdict.SLOWER : Verdict.FASTER;
+		}
+	}
+
+	public Verdict getThroughputVerdict()
+	{
+		return throughput;
+	}
+
+	/**
+	 * @return lower bound of the 95% confidence interval of the request rate difference (current minus baseline),
+	 * <code>NaN</code> if either result has less than 2 samples.
+	 */
+	public double getRateDifferenceLow()
+	{
+		return rateDifferenceLow;
+	}
+
+	/**
+	 * @return upper bound of the 95% confidence interval of the request rate difference (current minus baseline),
+	 * <code>NaN</code> if either result has less than 2 samples.
+	 */
+	public double getRateDifferenceHigh()
+	{
+		return rateDifferenceHigh;
+	}
+
+	/**
+	 * @return verdicts of the latency {@link #PERCENTILES}.
+	 */
+	public Verdict[] getLatencyVerdicts()
+	{
+		return latency.clone();
+	}
+
+	/**
+	 * @return largest distance between the cumulative latency distributions.
+	 */
+	public double getKsStatistic()
+	{
+		return ksStatistic;
+	}
+
+	public double getKsCriticalValue()
+	{
+		return ksCriticalValue;
+	}
+
+	/**
+	 * @return <code>true</code> if throughput or any latency percentile got slower, to gate merges on.
+	 */
+	public boolean isSlower()
+	{
+		return throughput == Verdict.SLOWER || Arrays.asList(latency).contains(Verdict.SLOWER);
+	}
+
+	String report(final double unitScale, final String unitSymbol)
+	{
+		final StringBuilder out = new StringBuilder();
+		out.append("  metric               baseline       current     change   verdict\n");
+		out.append(String.format("  %-16s  %12.1f  %12.1f  %8s   %s", "throughput r/s", baseline.getRequestRate(),
+				current.getRequestRate(), change(baseline.getRequestRate(), current.getRequestRate()), throughput));
+		out.append(Double.isNaN(rateDifferenceLow) ? " (less than 2 samples)\n"
+				: String.format(" (95%% CI of difference %.1f .. %.1f r/s)\n", rateDifferenceLow, rateDifferenceHigh));
+		for (int i = 0; i < PERCENTILES.length; ++i)
+		{
+			out.append(String.format("  %-16s  %12.3f  %12.3f  %8s   %s\n", LABELS[i] + " " + unitSymbol,
+					baselinePercentiles[i] * unitScale, currentPercentiles[i] * unitScale,
+					change(baselinePercentiles[i], currentPercentiles[i]), latency[i]));
+		}
+		out.append(String.format("  latency distribution: Kolmogorov-Smirnov D %.4f, critical value %.4f at 5%%", ksStatistic,
+				ksCriticalValue));
+		return out.toString();
+	}
+
+	private static String change(final double baseline, final double current)
+	{
+		return baseline == 0 ? "n/a" : String.format("%+.1f%%", 100 * (current - baseline) / baseline);
+	}
+
+	/**
+	 * Largest distance between the cumulative distributions, evaluated at every cell boundary of both histograms.
+	 * Inside a cell the cumulative count is only known to lie between the counts below and above the cell, so the
+	 * distance at a point is the smallest one consistent with both histograms: a coarse histogram makes the test
+	 * conservative instead of reporting its own approximation as a change.
+	 */
+	private static double ksStatistic(final List<Cell> a, final long n, final List<Cell> b, final long m)
+	{
+		final float[] points = new float[2 * (a.size() + b.size())];
+		int p = 0;
+		for (final Cell c : a)
+		{
+			points[p++] = c.minValue;
+			points[p++] = c.maxValue;
+		}
+		for (final Cell c : b)
+		{
+			points[p++] = c.minValue;
+			points[p++] = c.maxValue;
+		}
+		Arrays.sort(points);
+		final double[][] cdfA = cdf(a, n, points);
+		final double[][] cdfB = cdf(b, m, points);
+		double max = 0;
+		for (int i = 0; i < points.length; ++i)
+		{
+			max = Math.max(max, Math.max(cdfA[0][i] - cdfB[1][i], cdfB[0][i] - cdfA[1][i]));
+		}
+		return max;
+	}
+
+	/**
+	 * @param cells in value order, as returned by {@link AdaptiveHistogram#toTable()}.
+	 * @param points sorted.
+	 * @return lower and upper bounds of the cumulative distribution at the points.
+	 */
+	private static double[][] cdf(final List<Cell> cells, final long total, final float[] points)
+	{
+		final double[][] cdf = new double[2][points.length];
+		long below = 0;  // count of the cells entirely below the point
+		int cell = 0;
+		for (int i = 0; i < points.length; ++i)
+		{
+			final float x = points[i];
+			while (cell < cells.size() && x >= cells.get(cell).maxValue)
+			{
+				below += cells.get(cell++).count;
+			}
+			final boolean inside = cell < cells.size() && x > cells.get(cell).minValue;
+			cdf[0][i] = (double) below / total;
+			cdf[1][i] = (double) (inside ? below + cells.get(cell).count : below) / total;
+		}
+		return cdf;
+	}
+
+	private static double t975(final double df)
+	{
+		final int whole = (int) Math.floor(df);
+		// beyond the table 1.96 + 2.5 / df is within 0.002 of the exact quantile
+		return whole < 1 ? T_975[0] : whole <= T_975.length ? T_975[whole - 1] : 1.96 + 2.5 / df;
+	}
+
+	private static double mean(final double[] values)
+	{
+		return Arrays.stream(values).average().orElse(0);
+	}
+
+	private static double variance(final double[] values)
+	{
+		final double mean = mean(values);
+		return Arrays.stream(values).map(v -> (v - mean) * (v - mean)).sum() / (values.length - 1);
+	}
+}
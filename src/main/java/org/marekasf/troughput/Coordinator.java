@@ -0,0 +1,204 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.troughput;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Collects the results of several worker processes running the same action, so the load is not limited by a single JVM
+ * and the runner's own GC and scheduling are spread over several processes.
+ * A worker is an ordinary {@link ThroughputRunner.Builder#run()} with a coordinator address, either set by
+ * {@link ThroughputRunner.Builder#coordinator(String)} or by the <code>throughput.coordinator</code> system property
+ * {@link #launch(Class, String...)} passes to the processes it starts.
+ * Workers stream cumulative snapshots of their counters and histogram every <code>logSleepSeconds</code>;
+ * the coordinator prints merged sample results as they come and a merged final report in the usual format.
+ * Errors are counted, but their messages stay in the worker logs.
+ */
+public class Coordinator implements Closeable
+{
+	public static final String ADDRESS_PROPERTY = "throughput.coordinator";
+
+	private final int workers;
+	private final ThroughputRunner runner;
+	private final ServerSocket server;
+	private final List<Process> processes = new ArrayList<>();
+	private boolean histogram = true;
+	private int logSleepSeconds = 1;
+
+	public Coordinator(final int workers, final BiConsumer<String, Throwable> printer, final TimeUnit reportUnit)
+			throws IOException
+	{
+		this.workers = workers;
+		this.runner = new ThroughputRunner(printer, reportUnit);
+		this.server = new ServerSocket(0, workers, InetAddress.getLoopbackAddress());
+	}
+
+	public Coordinator histogram(final boolean display)
+	{
+		this.histogram = display;
+		return this;
+	}
+
+	public Coordinator logSleepSeconds(final int logSleepSeconds)
+	{
+		this.logSleepSeconds = logSleepSeconds;
+		return this;
+	}
+
+	/**
+	 * @return <code>host:port</code> the workers connect to.
+	 */
+	public String address()
+	{
+		return server.getInetAddress().getHostAddress() + ":" + server.getLocalPort();
+	}
+
+	/**
+	 * Starts one JVM per worker on the classpath of this one, running the <code>main</code> method of the given class with
+	 * the coordinator address in the <code>throughput.coordinator</code> system property. Output is inherited.
+	 */
+	public Coordinator launch(final Class<?> main, final String... args) throws IOException
+	{
+		final List<String> command = new ArrayList<>(Arrays.asList(
+				System.getProperty("java.home") + File.separator + "bin" + File.separator + "java", //
+				"-cp", System.getProperty("java.class.path"), //
+				"-D" + ADDRESS_PROPERTY + "=" + address(), //
+				main.getName()));
+		command.addAll(Arrays.asList(args));
+		for (int i = 0; i < workers; ++i)
+		{
+			processes.add(new ProcessBuilder(command).inheritIO().start());
+		}
+		return this;
+	}
+
+	/**
+	 * Waits for all the workers to connect and finish, printing merged sample results every <code>logSleepSeconds</code>.
+	 * A worker that disconnects without its final snapshot is counted with its last one.
+	 * @return the merged result: counters summed, max of max and test times, histograms merged.
+	 */
+	public ThroughputResult await(final long timeout, final TimeUnit unit) throws IOException, InterruptedException
+	{
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		final AtomicReferenceArray<WorkerSnapshot> latest = new AtomicReferenceArray<>(workers);
+		final AtomicReferenceArray<Boolean> done = new AtomicReferenceArray<>(workers);
+		final List<Thread> readers = new ArrayList<>();
+
+		for (int i = 0; i < workers; ++i)
+		{
+			final Socket socket = accept(deadline);
+			final int worker = i;
+			final Thread reader = new Thread(() -> {
+				try (Socket s = socket;
+						DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream())))
+				{
+					if (in.readInt() != WorkerSnapshot.MAGIC || in.readInt() != WorkerSnapshot.VERSION)
+					{
+						throw new IOException("Not a throughput worker or unsupported version");
+					}
+					WorkerSnapshot snapshot;
+					while ((snapshot = WorkerSnapshot.read(in)) != null)
+					{
+						latest.set(worker, snapshot);
+						if (snapshot.last)
+						{
+							break;
+						}
+					}
+				}
+				catch (final IOException e)
+				{
+					runner.print("Worker " + (worker + 1) + " failed", e);
+				}
+				finally
+				{
+					done.set(worker, true);
+				}
+			}, "throughput-coordinator-" + (i + 1));
+			reader.setDaemon(true);
+			reader.start();
+			readers.add(reader);
+		}
+
+		WorkerSnapshot[] printed = new WorkerSnapshot[workers];
+		while (!allDone(done) && System.nanoTime() < deadline)
+		{
+			TimeUnit.SECONDS.sleep(logSleepSeconds);
+			final WorkerSnapshot[] current = snapshots(latest);
+			if (!Arrays.equals(current, printed))
+			{
+				runner.aggregate(present(current), false, false);
+				printed = current;
+			}
+		}
+		if (!allDone(done))
+		{
+			runner.print("Coordinator timed out, reporting the last snapshots", null);
+		}
+		return runner.aggregate(present(snapshots(latest)), true, histogram);
+	}
+
+	/**
+	 * Closes the server socket and kills the launched workers still running.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		server.close();
+		processes.stream().filter(Process::isAlive).forEach(Process::destroy);
+	}
+
+	private Socket accept(final long deadline) throws IOException
+	{
+		final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+		if (remaining <= 0)
+		{
+			throw new SocketTimeoutException("Not all " + workers + " workers connected");
+		}
+		server.setSoTimeout((int) Math.min(remaining, Integer.MAX_VALUE));
+		return server.accept();
+	}
+
+	private static boolean allDone(final AtomicReferenceArray<Boolean> done)
+	{
+		return IntStream.range(0, done.length()).allMatch(i -> done.get(i) != null);
+	}
+
+	private static WorkerSnapshot[] snapshots(final AtomicReferenceArray<WorkerSnapshot> latest)
+	{
+		return IntStream.range(0, latest.length()).mapToObj(latest::get).toArray(WorkerSnapshot[]::new);
+	}
+
+	private static List<WorkerSnapshot> present(final WorkerSnapshot[] snapshots)
+	{
+		return Arrays.stream(snapshots).filter(Objects::nonNull).collect(Collectors.toList());
+	}
+}
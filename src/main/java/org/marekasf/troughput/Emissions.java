@@ -0,0 +1,87 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.troughput;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.marekasf.troughput.histogram.HistogramRecorder;
+
+import rx.Observable;
+import rx.functions.Action1;
+
+/**
+ * Emission-level statistics of streaming actions: time from the intended start to the first item, gaps between
+ * consecutive items and number of items per request. Items are counted on the action's own thread, before the
+ * <code>observeOn</code> hop. Instrumenting a request allocates one small tracker, items allocate nothing; without
+ * emission statistics the action's Observable is not instrumented at all.
+ */
+class Emissions
+{
+	final HistogramRecorder firstItem = new HistogramRecorder();
+	final HistogramRecorder gaps = new HistogramRecorder();
+	final HistogramRecorder itemsPerRequest = new HistogramRecorder();
+	final LongAdder items = new LongAdder();
+
+	/**
+	 * Merges the values recorded so far into the histograms.
+	 */
+	void flush()
+	{
+		firstItem.flush();
+		gaps.flush();
+		itemsPerRequest.flush();
+	}
+
+	<T> Observable<T> instrument(final Observable<T> source, final long intended)
+	{
+		final Tracker tracker = new Tracker(intended);
+		return source.doOnNext(tracker).doOnTerminate(tracker::done);
+	}
+
+	/**
+	 * Items of a single request. The Observable contract serializes the notifications, so plain fields suffice.
+	 */
+	private class Tracker implements Action1<Object>
+	{
+		private final long intended;
+		private long last;
+		private long count;
+
+		private Tracker(final long intended)
+		{
+			this.intended = intended;
+		}
+
+		@Override
+		public void call(final Object item)
+		{
+			final long now = System.nanoTime();
+			if (count++ == 0)
+			{
+				firstItem.recordValue(now - intended);
+			}
+			else
+			{
+				gaps.recordValue(now - last);
+			}
+			last = now;
+		}
+
+		private void done()
+		{
+			itemsPerRequest.recordValue(count);
+			items.add(count);
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.troughput;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executes the simulated clients (threads) of a run and the <code>observeOn</code> callbacks.
+ */
+public enum Engine
+{
+	/**
+	 * Fixed pool of platform threads, one per client plus 16 for callbacks.
+	 */
+	PLATFORM
+			{
+				@Override
+				ExecutorService executor(final int threads)
+				{
+					return Executors.newFixedThreadPool(threads + CALLBACK_THREADS);
+				}
+			},
+
+	/**
+	 * A virtual thread per client. Blocking clients do not hold an OS thread while they wait,
+	 * so tens of thousands of clients can be simulated. Callbacks, and with them the recording of every request,
+	 * run on a fixed pool of 16 platform threads: a thread per callback would cost a thread start per request.
+	 * Requires Java 21 or newer at runtime.
+	 */
+	VIRTUAL
+			{
+				@Override
+				ExecutorService executor(final int threads)
+				{
+					if (NEW_VIRTUAL_THREAD_EXECUTOR == null)
+					{
+						throw new UnsupportedOperationException(
+								"Virtual threads require Java 21+, running on " + System.getProperty("java.version"));
+					}
+					try
+					{
+						return (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null);
+					}
+					catch (final ReflectiveOperationException e)
+					{
+						throw new IllegalStateException("Cannot create virtual thread executor", e);
+					}
+				}
+
+				@Override
+				ExecutorService callbacks(final ExecutorService clients)
+				{
+					return Executors.newFixedThreadPool(CALLBACK_THREADS);
+				}
+
+				@Override
+				public boolean isAvailable()
+				{
+					return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+				}
+			};
+
+	// looked up reflectively, so the runner still builds and runs on Java 8
+	private static final Method NEW_VIRTUAL_THREAD_EXECUTOR = lookup(Executors.class, "newVirtualThreadPerTaskExecutor");
+
+	private static final int CALLBACK_THREADS = 16;
+
+	abstract ExecutorService executor(int threads);
+
+	/**
+	 * @param clients the executor of the clients, created by {@link #executor(int)}.
+	 * @return the executor of the <code>observeOn</code> callbacks, the clients' one unless the engine needs a
+	 * separate pool. Shut down with the clients' one.
+	 */
+	ExecutorService callbacks(final ExecutorService clients)
+	{
+		return clients;
+	}
+
+	/**
+	 * @return <code>true</code> if the engine can run on the current JVM.
+	 */
+	public boolean isAvailable()
+	{
+		return true;
+	}
+
+	private static Method lookup(final Class<?> type, final String name)
+	{
+		try
+		{
+			return type.getMethod(name);
+		}
+		catch (final NoSuchMethodException e)
+		{
+			return null;
+		}
+	}
+}
@@ -0,0 +1,244 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.troughput;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.marekasf.troughput.histogram.HistogramRecorder;
+
+/**
+ * Errors grouped by exception class and a fingerprint of the top stack frames, instead of by message: messages embedding
+ * ids or timestamps would create a bucket per error. The number of buckets is capped, errors beyond the cap are counted
+ * in a single overflow bucket. Only the first throwable of a bucket is kept. Every exception class has its own latency
+ * histogram. Java 8 has no way to read a throwable's frames without copying its whole stack trace, so the fingerprint of
+ * a throwable registered again, e.g. a shared instance emitted by <code>Observable.error</code>, is not computed twice.
+ */
+class ErrorBuckets
+{
+	private static final int FINGERPRINT_FRAMES = 5;
+
+	private final int maxBuckets;
+	private final ConcurrentHashMap<Class<?>, ErrorClass> classes = new ConcurrentHashMap<>();
+	private final AtomicInteger buckets = new AtomicInteger();
+	private final ErrorClass overflow = new ErrorClass(null);
+
+	ErrorBuckets(final int maxBuckets)
+	{
+		this.maxBuckets = maxBuckets;
+	}
+
+	/**
+	 * Counts an error of a request that took <code>latencyNs</code>.
+	 */
+	void register(final Throwable t, final long latencyNs)
+	{
+		ErrorClass errorClass = classes.get(t.getClass());
+		if (errorClass == null)
+		{
+			if (!reserve())
+			{
+				overflow.register(t, 0, latencyNs);
+				return;
+			}
+			final ErrorClass created = new ErrorClass(t.getClass());
+			errorClass = classes.putIfAbsent(t.getClass(), created);
+			if (errorClass == null)
+			{
+				errorClass = created;
+			}
+			else
+			{
+				buckets.decrementAndGet();  // lost the race, the bucket was not used
+			}
+		}
+		if (!errorClass.register(t, errorClass.fingerprint(t), latencyNs))
+		{
+			overflow.register(t, 0, latencyNs);
+		}
+	}
+
+	/**
+	 * Merges the latencies recorded so far into the histograms of the exception classes.
+	 */
+	void flush()
+	{
+		classes.values().forEach(c -> c.latency.flush());
+		overflow.latency.flush();
+	}
+
+	/**
+	 * @return number of distinct buckets, the overflow bucket included if used.
+	 */
+	int size()
+	{
+		return classes.values().stream().mapToInt(c -> c.buckets.length).sum() + overflow.buckets.length;
+	}
+
+	/**
+	 * @return the exception classes, the overflow last if used.
+	 */
+	List<ErrorClass> classes()
+	{
+		final List<ErrorClass> result = new ArrayList<>(classes.values());
+		result.sort((a, b) -> Long.compare(b.count.longValue(), a.count.longValue()));
+		if (overflow.count.longValue() > 0)
+		{
+			result.add(overflow);
+		}
+		return result;
+	}
+
+	private boolean reserve()
+	{
+		int used;
+		do
+		{
+			used = buckets.get();
+			if (used >= maxBuckets)
+			{
+				return false;
+			}
+		} while (!buckets.compareAndSet(used, used + 1));
+		return true;
+	}
+
+	private static int fingerprint(final Throwable t)
+	{
+		final StackTraceElement[] stack = t.getStackTrace();
+		int hash = 1;
+		for (int i = 0; i < stack.length && i < FINGERPRINT_FRAMES; ++i)
+		{
+			hash = 31 * hash + stack[i].getClassName().hashCode();
+			hash = 31 * hash + stack[i].getMethodName().hashCode();
+			hash = 31 * hash + stack[i].getLineNumber();
+		}
+		return hash;
+	}
+
+	/**
+	 * Errors of one exception class, <code>null</code> for the overflow.
+	 */
+	class ErrorClass
+	{
+		final Class<?> type;
+		final LongAdder count = new LongAdder();
+		final HistogramRecorder latency = new HistogramRecorder();
+		private volatile Bucket[] buckets = new Bucket[0];  // copy on write, a few per class
+		private volatile Fingerprint last;                   // of the last throwable registered
+
+		private ErrorClass(final Class<?> type)
+		{
+			this.type = type;
+		}
+
+		String name()
+		{
+			return type == null ? "other (more than " + maxBuckets + " error buckets)" : type.getName();
+		}
+
+		Collection<Bucket> buckets()
+		{
+			return Arrays.asList(buckets);
+		}
+
+		private int fingerprint(final Throwable t)
+		{
+			final Fingerprint known = last;
+			if (known != null && known.throwable == t)
+			{
+				return known.hash;
+			}
+			final Fingerprint computed = new Fingerprint(t, ErrorBuckets.fingerprint(t));
+			last = computed;
+			return computed.hash;
+		}
+
+		/**
+		 * @return <code>false</code> if the fingerprint is new and the bucket cap is reached.
+		 */
+		private boolean register(final Throwable t, final int fingerprint, final long latencyNs)
+		{
+			Bucket bucket = find(buckets, fingerprint);
+			if (bucket == null)
+			{
+				synchronized (this)
+				{
+					bucket = find(buckets, fingerprint);
+					if (bucket == null)
+					{
+						// the first bucket of a class was reserved with the class
+						if (buckets.length > 0 && !reserve())
+						{
+							return false;
+						}
+						bucket = new Bucket(fingerprint, t);
+						final Bucket[] grown = Arrays.copyOf(buckets, buckets.length + 1);
+						grown[buckets.length] = bucket;
+						buckets = grown;
+					}
+				}
+			}
+			bucket.count.increment();
+			count.increment();
+			latency.recordValue(latencyNs);
+			return true;
+		}
+
+		private Bucket find(final Bucket[] buckets, final int fingerprint)
+		{
+			for (final Bucket bucket : buckets)
+			{
+				if (bucket.fingerprint == fingerprint)
+				{
+					return bucket;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Errors of one class thrown from the same place.
+	 */
+	static class Bucket
+	{
+		final int fingerprint;
+		final Throwable first;
+		final LongAdder count = new LongAdder();
+
+		private Bucket(final int fingerprint, final Throwable first)
+		{
+			this.fingerprint = fingerprint;
+			this.first = first;
+		}
+	}
+
+	private static final class Fingerprint
+	{
+		final Throwable throwable;
+		final int hash;
+
+		private Fingerprint(final Throwable throwable, final int hash)
+		{
+			this.throwable = throwable;
+			this.hash = hash;
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.troughput;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+import rx.functions.Action0;
+
+/**
+ * Counts outstanding requests and caps them at <code>maxInFlight</code> (<code>0</code> means unbounded).
+ * A loop thread that finds no free slot parks until a completing request releases one, it never waits on a request.
+ * While paused no slot is free, so the runner can wait for the outstanding requests and switch phases with no request
+ * being recorded.
+ */
+class InFlightLimiter
+{
+	private static final long MAX_PARK_NS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final int maxInFlight;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final ConcurrentLinkedQueue<Thread> waiting = new ConcurrentLinkedQueue<>();
+	private volatile boolean paused;
+
+	InFlightLimiter(final int maxInFlight)
+	{
+		this.maxInFlight = maxInFlight;
+	}
+
+	boolean tryAcquire()
+	{
+		if (paused)
+		{
+			return false;
+		}
+		int current;
+		do
+		{
+			current = inFlight.get();
+			if (maxInFlight > 0 && current >= maxInFlight)
+			{
+				return false;
+			}
+		} while (!inFlight.compareAndSet(current, current + 1));
+		return true;
+	}
+
+	/**
+	 * Takes a slot, parking while none is free.
+	 * @return <code>false</code> when <code>running</code> turned false before a slot was free.
+	 */
+	boolean acquire(final BooleanSupplier running)
+	{
+		final Thread current = Thread.currentThread();
+		while (!tryAcquire())
+		{
+			if (!running.getAsBoolean())
+			{
+				return false;
+			}
+			waiting.offer(current);
+			// a slot may have been released before we were queued
+			if (!tryAcquire())
+			{
+				LockSupport.parkNanos(this, MAX_PARK_NS);
+				waiting.remove(current);
+				continue;
+			}
+			waiting.remove(current);
+			return true;
+		}
+		return true;
+	}
+
+	void release()
+	{
+		inFlight.decrementAndGet();
+		final Thread next = waiting.poll();
+		if (next != null)
+		{
+			LockSupport.unpark(next);
+		}
+	}
+
+	/**
+	 * Stops handing out slots and waits until the outstanding requests complete.
+	 * @return <code>false</code> if requests were still outstanding after the timeout.
+	 */
+	boolean pause(final long timeoutNs) throws InterruptedException
+	{
+		paused = true;
+		final long deadline = System.nanoTime() + timeoutNs;
+		while (inFlight.get() > 0 && System.nanoTime() < deadline)
+		{
+			Thread.sleep(1);
+		}
+		return inFlight.get() == 0;
+	}
+
+	void resume()
+	{
+		paused = false;
+		Thread next;
+		while ((next = waiting.poll()) != null)
+		{
+			LockSupport.unpark(next);
+		}
+	}
+
+	/**
+	 * @return an action releasing the slot of one request the first time it is called. A request may terminate, be
+	 * unsubscribed after terminating, or be unsubscribed without terminating: every path calls it, the slot is released
+	 * once.
+	 */
+	Action0 permit()
+	{
+		return new Permit();
+	}
+
+	int inFlight()
+	{
+		return inFlight.get();
+	}
+
+	int maxInFlight()
+	{
+		return maxInFlight;
+	}
+
+	private final class Permit extends AtomicBoolean implements Action0
+	{
+		@Override
+		public void call()
+		{
+			if (compareAndSet(false, true))
+			{
+				release();
+			}
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.troughput;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * Snapshot of the JVM's garbage collection, heap usage and allocation, to tell latency caused by the JVM from latency
+ * caused by the tested service. GC counts and times are summed over all collectors as reported by their MX beans: pauses
+ * for the stop-the-world collectors, cycles for the concurrent ones. Allocation is summed over the live threads, so
+ * threads that ended between two snapshots are missed, and is <code>-1</code> if the JVM cannot measure it.
+ */
+class JvmStats
+{
+	final long nanoTime;
+	final long gcCount;
+	final long gcTimeMs;
+	final long heapUsedBytes;
+	final long allocatedBytes;
+
+	private JvmStats(final long nanoTime, final long gcCount, final long gcTimeMs, final long heapUsedBytes,
+			final long allocatedBytes)
+	{
+		this.nanoTime = nanoTime;
+		this.gcCount = gcCount;
+		this.gcTimeMs = gcTimeMs;
+		this.heapUsedBytes = heapUsedBytes;
+		this.allocatedBytes = allocatedBytes;
+	}
+
+	static JvmStats sample()
+	{
+		long count = 0;
+		long time = 0;
+		for (final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+		{
+			count += Math.max(gc.getCollectionCount(), 0);
+			time += Math.max(gc.getCollectionTime(), 0);
+		}
+		return new JvmStats(System.nanoTime(), count, time,
+				ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed(), allocatedBytes());
+	}
+
+	/**
+	 * @return share of the time since <code>since</code> spent in GC.
+	 */
+	double gcShare(final JvmStats since)
+	{
+		return nanoTime == since.nanoTime ? 0 : (gcTimeMs - since.gcTimeMs) * 1e6 / (nanoTime - since.nanoTime);
+	}
+
+	/**
+	 * @return bytes allocated since <code>since</code>, <code>-1</code> if unknown.
+	 */
+	long allocatedBytes(final JvmStats since)
+	{
+		return allocatedBytes < 0 || since.allocatedBytes < 0 ? -1 : Math.max(allocatedBytes - since.allocatedBytes, 0);
+	}
+
+	private static long allocatedBytes()
+	{
+		final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean))
+		{
+			return -1;
+		}
+		final com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+		if (!allocation.isThreadAllocatedMemorySupported() || !allocation.isThreadAllocatedMemoryEnabled())
+		{
+			return -1;
+		}
+		// -1 for the threads that ended since their ids were read
+		return Arrays.stream(allocation.getThreadAllocatedBytes(threads.getAllThreadIds())).filter(b -> b > 0).sum();
+	}
+}
@@ -0,0 +1,150 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.troughput;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Sequence of load stages run one after another, each for <code>testTimeInSeconds</code>.
+ * A stage either sets the number of threads (closed loop) or the open-loop request rate.
+ * After the run the saturation stage is detected: the last stage before throughput stops rising while p99 latency climbs.
+ */
+public class LoadProfile
+{
+	private final int[] threads;
+	private final double[] rates;
+	private double minThroughputGain = 0.05;
+	private double minLatencyGrowth = 0.2;
+	private long p99TargetNs = 0;
+
+	private LoadProfile(final int[] threads, final double[] rates)
+	{
+		this.threads = threads;
+		this.rates = rates;
+	}
+
+	/**
+	 * Closed-loop stages with the given numbers of threads.
+	 */
+	public static LoadProfile steps(final int... threads)
+	{
+		return new LoadProfile(threads, null);
+	}
+
+	/**
+	 * Closed-loop stages with 1, 2, 4 ... threads, up to and including <code>maxThreads</code>.
+	 */
+	public static LoadProfile doubling(final int maxThreads)
+	{
+		return steps(IntStream.concat(IntStream.iterate(1, t -> t * 2).limit(31).filter(t -> t < maxThreads), //
+				IntStream.of(maxThreads)).toArray());
+	}
+
+	/**
+	 * Open-loop stages with request rates growing linearly from <code>from</code> to <code>to</code> requests per second.
+	 * Builder threads should be enough to sustain the highest rate.
+	 */
+	public static LoadProfile rateRamp(final double from, final double to, final int stages)
+	{
+		final double step = stages > 1 ? (to - from) / (stages - 1) : 0;
+		return new LoadProfile(null, IntStream.range(0, stages).mapToDouble(i -> from + i * step).toArray());
+	}
+
+	/**
+	 * Relative throughput gain below which the next stage is considered to have stopped rising. Default 5%.
+	 */
+	public LoadProfile minThroughputGain(final double minThroughputGain)
+	{
+		this.minThroughputGain = minThroughputGain;
+		return this;
+	}
+
+	/**
+	 * Relative p99 growth above which the next stage is considered to have climbed. Default 20%.
+	 */
+	public LoadProfile minLatencyGrowth(final double minLatencyGrowth)
+	{
+		this.minLatencyGrowth = minLatencyGrowth;
+		return this;
+	}
+
+	/**
+	 * p99 latency the max sustainable throughput is reported for.
+	 */
+	public LoadProfile p99Target(final long p99Target, final TimeUnit unit)
+	{
+		this.p99TargetNs = unit.toNanos(p99Target);
+		return this;
+	}
+
+	public int stages()
+	{
+		return threads != null ? threads.length : rates.length;
+	}
+
+	public int threads(final int stage, final int defaultThreads)
+	{
+		return threads != null ? threads[stage] : defaultThreads;
+	}
+
+	public double rate(final int stage, final double defaultRate)
+	{
+		return rates != null ? rates[stage] : defaultRate;
+	}
+
+	public long getP99TargetNs()
+	{
+		return p99TargetNs;
+	}
+
+	/**
+	 * @return index of the last stage before throughput stops rising while p99 latency climbs, <code>-1</code> if no
+	 * stage saturated.
+	 */
+	public int saturationStage(final List<ThroughputResult> stages)
+	{
+		for (int i = 1; i < stages.size(); ++i)
+		{
+			final ThroughputResult previous = stages.get(i - 1);
+			final ThroughputResult current = stages.get(i);
+			if (current.getRequestRate() < previous.getRequestRate() * (1 + minThroughputGain)
+					&& current.getValueForPercentile(99) > previous.getValueForPercentile(99) * (1 + minLatencyGrowth))
+			{
+				return i - 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return index of the stage with the highest request rate whose p99 latency meets the target, <code>-1</code> if no
+	 * target is set or no stage meets it.
+	 */
+	public int maxSustainableStage(final List<ThroughputResult> stages)
+	{
+		int best = -1;
+		for (int i = 0; p99TargetNs > 0 && i < stages.size(); ++i)
+		{
+			final ThroughputResult stage = stages.get(i);
+			if (stage.getValueForPercentile(99) <= p99TargetNs && (best < 0 || stage.getRequestRate() > stages.get(best)
+					.getRequestRate()))
+			{
+				best = i;
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,71 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.troughput;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves metrics in the Prometheus text exposition format on <code>/metrics</code>, with the HTTP server of the JDK.
+ * Listens on the loopback address unless another address is given.
+ */
+class MetricsServer
+{
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final HttpServer server;
+
+	/**
+	 * @param host address to listen on, <code>null</code> for the loopback address.
+	 */
+	MetricsServer(final String host, final int port, final Supplier<String> metrics) throws IOException
+	{
+		final InetAddress address = host == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(host);
+		server = HttpServer.create(new InetSocketAddress(address, port), 0);
+		server.createContext("/metrics", exchange -> {
+			try
+			{
+				final byte[] body = "HEAD".equals(exchange.getRequestMethod()) ? new byte[0]
+						: metrics.get().getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+				exchange.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+				try (OutputStream out = exchange.getResponseBody())
+				{
+					out.write(body);
+				}
+			}
+			finally
+			{
+				exchange.close();
+			}
+		});
+		server.start();
+	}
+
+	int port()
+	{
+		return server.getAddress().getPort();
+	}
+
+	void stop()
+	{
+		server.stop(0);
+	}
+}
@@ -0,0 +1,121 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.troughput;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.marekasf.troughput.histogram.HistogramRecorder;
+
+import rx.Observable;
+
+/**
+ * Mix of named actions, each request runs one of them picked at random in proportion to its weight.
+ * Picking uses the thread local random generator, so clients do not contend. Every action has its own counters and
+ * histogram.
+ */
+class Scenario
+{
+	private final List<Action> actions = new ArrayList<>();
+	private double[] cumulativeWeights = new double[0];
+
+	void add(final String name, final double weight, final Supplier<Observable<?>> action)
+	{
+		if (weight <= 0)
+		{
+			throw new IllegalArgumentException("Weight of action " + name + " must be positive: " + weight);
+		}
+		actions.add(new Action(name, weight, action));
+		final double[] grown = new double[actions.size()];
+		System.arraycopy(cumulativeWeights, 0, grown, 0, cumulativeWeights.length);
+		grown[grown.length - 1] = (grown.length > 1 ? grown[grown.length - 2] : 0) + weight;
+		cumulativeWeights = grown;
+	}
+
+	boolean isEmpty()
+	{
+		return actions.isEmpty();
+	}
+
+	/**
+	 * @return a copy with the same actions and fresh counters, for a new run.
+	 */
+	Scenario reset()
+	{
+		final Scenario copy = new Scenario();
+		actions.forEach(a -> copy.add(a.name, a.weight, a.action));
+		return copy;
+	}
+
+	Action pick()
+	{
+		final double[] weights = cumulativeWeights;
+		final double r = ThreadLocalRandom.current().nextDouble(weights[weights.length - 1]);
+		int i = 0;
+		while (r >= weights[i] && i < weights.length - 1)
+		{
+			++i;
+		}
+		return actions.get(i);
+	}
+
+	List<Action> actions()
+	{
+		return actions;
+	}
+
+	/**
+	 * Merges the times recorded so far into the histograms of the actions.
+	 */
+	void flush()
+	{
+		actions.forEach(a -> a.histogram.flush());
+	}
+
+	double share(final Action action)
+	{
+		return action.weight / cumulativeWeights[cumulativeWeights.length - 1];
+	}
+
+	/**
+	 * A named action with its own counters and histogram. All times are in nanoseconds.
+	 */
+	static class Action
+	{
+		final String name;
+		final double weight;
+		final Supplier<Observable<?>> action;
+		final LongAdder requestCount = new LongAdder();
+		final LongAdder errorCount = new LongAdder();
+		final LongAdder totalRequestTimeNs = new LongAdder();
+		final HistogramRecorder histogram = new HistogramRecorder();
+
+		private Action(final String name, final double weight, final Supplier<Observable<?>> action)
+		{
+			this.name = name;
+			this.weight = weight;
+			this.action = action;
+		}
+
+		void register(final long time)
+		{
+			requestCount.increment();
+			totalRequestTimeNs.add(time);
+			histogram.recordValue(time);
+		}
+	}
+}
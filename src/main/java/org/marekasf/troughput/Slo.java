@@ -0,0 +1,106 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.troughput;
+
+import java.util.concurrent.TimeUnit;
+
+import org.marekasf.troughput.histogram.AdaptiveHistogram;
+
+/**
+ * Service level objective checked by a run, see {@link ThroughputRunner.Builder#slo(Slo)}. A timed run is aborted as
+ * soon as an objective cannot be met any more, even if every remaining request succeeded within the limit; the final
+ * result lists the objectives that were not met.
+ */
+public abstract class Slo
+{
+	private final String description;
+
+	private Slo(final String description)
+	{
+		this.description = description;
+	}
+
+	/**
+	 * @return an objective that the given percentile of the request time is at most <code>limit</code>, e.g.
+	 * <code>percentileBelow(99, 20, MILLISECONDS)</code> for "p99 &lt;= 20 ms".
+	 */
+	public static Slo percentileBelow(final double percentile, final long limit, final TimeUnit unit)
+	{
+		final long limitNs = unit.toNanos(limit);
+		final double share = 1 - percentile / 100;
+		return new Slo("p" + format(percentile) + " <= " + limit + " " + ThroughputRunner.unitSymbol(unit))
+		{
+			@Override
+			boolean met(final ThroughputResult result)
+			{
+				return result.getValueForPercentile(percentile) <= limitNs;
+			}
+
+			@Override
+			boolean breached(final AdaptiveHistogram histogram, final long requests, final long errors,
+					final double maxRequests)
+			{
+				// requests in buckets entirely above the limit, a lower bound of the requests over it
+				final long over = histogram.getAccumCount(Float.MAX_VALUE) - histogram.getAccumCount(limitNs);
+				return over > share * maxRequests;
+			}
+		};
+	}
+
+	/**
+	 * @return an objective that at most the given fraction of requests fail, e.g. <code>errorRateBelow(0.001)</code>
+	 * for "error rate &lt;= 0.1%".
+	 */
+	public static Slo errorRateBelow(final double fraction)
+	{
+		return new Slo("error rate <= " + format(100 * fraction) + "%")
+		{
+			@Override
+			boolean met(final ThroughputResult result)
+			{
+				return result.getErrorCount() <= fraction * result.getRequestCount();
+			}
+
+			@Override
+			boolean breached(final AdaptiveHistogram histogram, final long requests, final long errors,
+					final double maxRequests)
+			{
+				return errors > fraction * maxRequests;
+			}
+		};
+	}
+
+	/**
+	 * @return <code>true</code> if the finished run meets the objective.
+	 */
+	abstract boolean met(ThroughputResult result);
+
+	/**
+	 * @param maxRequests generous estimate of the number of requests at the end of the run.
+	 * @return <code>true</code> if the objective cannot be met any more, even if all the remaining requests succeed within
+	 * the limit.
+	 */
+	abstract boolean breached(AdaptiveHistogram histogram, long requests, long errors, double maxRequests);
+
+	@Override
+	public String toString()
+	{
+		return description;
+	}
+
+	private static String format(final double value)
+	{
+		return value == Math.rint(value) ? String.valueOf((long) value) : String.valueOf(value);
+	}
+}
@@ -0,0 +1,132 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.troughput;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Minimal SVG line chart, JFreeChart 1.0.13 has no vector output. Plain text, needs no AWT.
+ */
+class SvgChart
+{
+	private static final int WIDTH = 800;
+	private static final int HEIGHT = 500;
+	private static final int MARGIN = 70;
+	private static final int TICKS = 5;
+	private static final String[] COLORS = { "#1f77b4", "#d62728", "#2ca02c", "#9467bd" };
+
+	private final String title;
+	private final String xLabel;
+	private final String yLabel;
+	private final List<String> names = new ArrayList<>();
+	private final List<double[]> xs = new ArrayList<>();
+	private final List<double[]> ys = new ArrayList<>();
+
+	SvgChart(final String title, final String xLabel, final String yLabel)
+	{
+		this.title = title;
+		this.xLabel = xLabel;
+		this.yLabel = yLabel;
+	}
+
+	SvgChart series(final String name, final double[] x, final double[] y)
+	{
+		names.add(name);
+		xs.add(x);
+		ys.add(y);
+		return this;
+	}
+
+	String render()
+	{
+		final double minX = min(xs);
+		final double maxX = Math.max(max(xs), minX + 1e-9);
+		final double minY = Math.min(0, min(ys));
+		final double maxY = Math.max(max(ys), minY + 1e-9);
+		final double plotWidth = WIDTH - 2 * MARGIN;
+		final double plotHeight = HEIGHT - 2 * MARGIN;
+
+		final StringBuilder svg = new StringBuilder();
+		svg.append(format("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"%d\" height=\"%d\" font-family=\"sans-serif\" "
+				+ "font-size=\"12\">\n", WIDTH, HEIGHT));
+		svg.append(format("<rect width=\"%d\" height=\"%d\" fill=\"white\"/>\n", WIDTH, HEIGHT));
+		svg.append(format("<text x=\"%d\" y=\"%d\" text-anchor=\"middle\" font-size=\"16\">%s</text>\n", WIDTH / 2, MARGIN / 2,
+				escape(title)));
+		svg.append(format("<rect x=\"%d\" y=\"%d\" width=\"%.0f\" height=\"%.0f\" fill=\"none\" stroke=\"black\"/>\n", MARGIN,
+				MARGIN, plotWidth, plotHeight));
+		for (int i = 0; i <= TICKS; ++i)
+		{
+			final double px = MARGIN + plotWidth * i / TICKS;
+			final double py = HEIGHT - MARGIN - plotHeight * i / TICKS;
+			svg.append(format("<line x1=\"%.1f\" y1=\"%d\" x2=\"%.1f\" y2=\"%d\" stroke=\"#ddd\"/>\n", px, MARGIN, px,
+					HEIGHT - MARGIN));
+			svg.append(format("<line x1=\"%d\" y1=\"%.1f\" x2=\"%d\" y2=\"%.1f\" stroke=\"#ddd\"/>\n", MARGIN, py, WIDTH - MARGIN,
+					py));
+			svg.append(format("<text x=\"%.1f\" y=\"%d\" text-anchor=\"middle\">%s</text>\n", px, HEIGHT - MARGIN + 16,
+					number(minX + (maxX - minX) * i / TICKS)));
+			svg.append(format("<text x=\"%d\" y=\"%.1f\" text-anchor=\"end\">%s</text>\n", MARGIN - 6, py + 4,
+					number(minY + (maxY - minY) * i / TICKS)));
+		}
+		svg.append(format("<text x=\"%d\" y=\"%d\" text-anchor=\"middle\">%s</text>\n", WIDTH / 2, HEIGHT - MARGIN / 3,
+				escape(xLabel)));
+		svg.append(format("<text x=\"%d\" y=\"%d\" text-anchor=\"middle\" transform=\"rotate(-90 %d %d)\">%s</text>\n",
+				MARGIN / 4, HEIGHT / 2, MARGIN / 4, HEIGHT / 2, escape(yLabel)));
+
+		for (int s = 0; s < names.size(); ++s)
+		{
+			final String color = COLORS[s % COLORS.length];
+			svg.append("<polyline fill=\"none\" stroke=\"").append(color).append("\" stroke-width=\"2\" points=\"");
+			final double[] x = xs.get(s);
+			final double[] y = ys.get(s);
+			for (int i = 0; i < x.length; ++i)
+			{
+				svg.append(format("%.1f,%.1f ", MARGIN + plotWidth * (x[i] - minX) / (maxX - minX),
+						HEIGHT - MARGIN - plotHeight * (y[i] - minY) / (maxY - minY)));
+			}
+			svg.append("\"/>\n");
+			svg.append(format("<text x=\"%d\" y=\"%d\" fill=\"%s\">%s</text>\n", MARGIN + 10, MARGIN + 18 * (s + 1), color,
+					escape(names.get(s))));
+		}
+		return svg.append("</svg>\n").toString();
+	}
+
+	private static double min(final List<double[]> values)
+	{
+		return values.stream().flatMapToDouble(Arrays::stream).min().orElse(0);
+	}
+
+	private static double max(final List<double[]> values)
+	{
+		return values.stream().flatMapToDouble(Arrays::stream).max().orElse(1);
+	}
+
+	private static String number(final double value)
+	{
+		return format(Math.abs(value) >= 100 ? "%.0f" : "%.3g", value);
+	}
+
+	private static String format(final String format, final Object... args)
+	{
+		// SVG numbers always use a dot
+		return String.format(Locale.ROOT, format, args);
+	}
+
+	private static String escape(final String text)
+	{
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+	}
+}
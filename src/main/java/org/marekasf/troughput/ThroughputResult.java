@@ -0,0 +1,247 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.troughput;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import org.marekasf.troughput.histogram.AdaptiveHistogram;
+
+/**
+ * Counters and latency histogram of a finished run (or of a single load profile stage). All times are in nanoseconds.
+ */
+public class ThroughputResult
+{
+	private static final double NANOS_PER_SECOND = 1e9;
+	private static final int MAGIC = 0x54525253; // "TRRS"
+	private static final int VERSION = 1;
+
+	private final int threads;
+	private final double targetRate;
+	private final long testTimeNs;
+	private final long requestCount;
+	private final long errorCount;
+	private final long totalRequestTimeNs;
+	private final long maxRequestTimeNs;
+	private final AdaptiveHistogram histogram;
+	private final double[] sampleRates;
+	private List<Slo> sloViolations = Collections.emptyList();
+	private boolean aborted = false;
+
+	public ThroughputResult(final int threads, final double targetRate, final long testTimeNs, final long requestCount,
+			final long errorCount, final long totalRequestTimeNs, final long maxRequestTimeNs, final AdaptiveHistogram histogram)
+	{
+		this(threads, targetRate, testTimeNs, requestCount, errorCount, totalRequestTimeNs, maxRequestTimeNs, histogram,
+				new double[0]);
+	}
+
+	/**
+	 * @param sampleRates request rate of every <code>logSleepSeconds</code> sample, for confidence intervals.
+	 */
+	public ThroughputResult(final int threads, final double targetRate, final long testTimeNs, final long requestCount,
+			final long errorCount, final long totalRequestTimeNs, final long maxRequestTimeNs, final AdaptiveHistogram histogram,
+			final double[] sampleRates)
+	{
+		this.threads = threads;
+		this.targetRate = targetRate;
+		this.testTimeNs = testTimeNs;
+		this.requestCount = requestCount;
+		this.errorCount = errorCount;
+		this.totalRequestTimeNs = totalRequestTimeNs;
+		this.maxRequestTimeNs = maxRequestTimeNs;
+		this.histogram = histogram;
+		this.sampleRates = sampleRates;
+	}
+
+	/**
+	 * Reads a result written by {@link #write(File)}, e.g. a baseline.
+	 */
+	public static ThroughputResult read(final File file) throws IOException
+	{
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+		{
+			if (in.readInt() != MAGIC)
+			{
+				throw new IOException("Not a throughput result: " + file);
+			}
+			final int version = in.readInt();
+			if (version != VERSION)
+			{
+				throw new IOException("Unsupported throughput result version " + version + ": " + file);
+			}
+			final int threads = in.readInt();
+			final double targetRate = in.readDouble();
+			final long testTimeNs = in.readLong();
+			final long requestCount = in.readLong();
+			final long errorCount = in.readLong();
+			final long totalRequestTimeNs = in.readLong();
+			final long maxRequestTimeNs = in.readLong();
+			final double[] sampleRates = new double[in.readInt()];
+			for (int i = 0; i < sampleRates.length; ++i)
+			{
+				sampleRates[i] = in.readDouble();
+			}
+			final byte[] histogram = new byte[in.readInt()];
+			in.readFully(histogram);
+			return new ThroughputResult(threads, targetRate, testTimeNs, requestCount, errorCount, totalRequestTimeNs,
+					maxRequestTimeNs, AdaptiveHistogram.decode(histogram), sampleRates);
+		}
+		catch (final EOFException | IllegalArgumentException e)
+		{
+			throw new IOException("Truncated or corrupt throughput result: " + file, e);
+		}
+	}
+
+	/**
+	 * Writes the counters, sample rates and the full histogram, to be read back as a baseline by {@link #read(File)}.
+	 */
+	public void write(final File file) throws IOException
+	{
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file))))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(threads);
+			out.writeDouble(targetRate);
+			out.writeLong(testTimeNs);
+			out.writeLong(requestCount);
+			out.writeLong(errorCount);
+			out.writeLong(totalRequestTimeNs);
+			out.writeLong(maxRequestTimeNs);
+			out.writeInt(sampleRates.length);
+			for (final double rate : sampleRates)
+			{
+				out.writeDouble(rate);
+			}
+			final byte[] encoded = histogram.encode(true);
+			out.writeInt(encoded.length);
+			out.write(encoded);
+		}
+	}
+
+	public int getThreads()
+	{
+		return threads;
+	}
+
+	/**
+	 * @return open-loop request rate the run was started with, <code>0</code> for a closed loop.
+	 */
+	public double getTargetRate()
+	{
+		return targetRate;
+	}
+
+	public long getTestTimeNs()
+	{
+		return testTimeNs;
+	}
+
+	public long getRequestCount()
+	{
+		return requestCount;
+	}
+
+	public long getErrorCount()
+	{
+		return errorCount;
+	}
+
+	public long getTotalRequestTimeNs()
+	{
+		return totalRequestTimeNs;
+	}
+
+	public long getMaxRequestTimeNs()
+	{
+		return maxRequestTimeNs;
+	}
+
+	public AdaptiveHistogram getHistogram()
+	{
+		return histogram;
+	}
+
+	/**
+	 * @return request rate of every <code>logSleepSeconds</code> sample, empty if not recorded.
+	 */
+	public double[] getSampleRates()
+	{
+		return sampleRates.clone();
+	}
+
+	public double getRequestRate()
+	{
+		return requestCount * NANOS_PER_SECOND / testTimeNs;
+	}
+
+	public double getErrorRate()
+	{
+		return errorCount * NANOS_PER_SECOND / testTimeNs;
+	}
+
+	public double getAvgRequestTimeNs()
+	{
+		return requestCount == 0 ? 0 : (double) totalRequestTimeNs / requestCount;
+	}
+
+	public float getValueForPercentile(final double percentile)
+	{
+		return histogram.getValueForPercentile(percentile);
+	}
+
+	/**
+	 * @return the objectives of {@link ThroughputRunner.Builder#slo(Slo)} the run did not meet, empty if all were met.
+	 */
+	public List<Slo> getSloViolations()
+	{
+		return sloViolations;
+	}
+
+	public boolean isSloMet()
+	{
+		return sloViolations.isEmpty();
+	}
+
+	/**
+	 * @return <code>true</code> if the run was stopped early because an objective could no longer be met.
+	 */
+	public boolean isAborted()
+	{
+		return aborted;
+	}
+
+	void slo(final List<Slo> violations, final boolean aborted)
+	{
+		this.sloViolations = Collections.unmodifiableList(violations);
+		this.aborted = aborted;
+	}
+
+	/**
+	 * Compares this result with a baseline, see {@link Comparison}.
+	 */
+	public Comparison compareTo(final ThroughputResult baseline)
+	{
+		return new Comparison(baseline, this);
+	}
+}
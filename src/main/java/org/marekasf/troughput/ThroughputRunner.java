@@ -13,17 +13,32 @@ limitations under the License.
 */
 package org.marekasf.troughput;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.awt.GraphicsEnvironment;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.BiConsumer;
+import java.util.function.DoubleFunction;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import org.marekasf.troughput.histogram.AdaptiveHistogram;
+import org.marekasf.troughput.histogram.HistogramLogWriter;
+import org.marekasf.troughput.histogram.HistogramRecorder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,6 +50,27 @@ import rx.schedulers.Schedulers;
 public class ThroughputRunner
 {
 	private static final Logger LOG = LoggerFactory.getLogger(ThroughputRunner.class);
+	private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+	private static final double MB = 1024 * 1024;
+	private static final int WARM_UP_STEADY_INTERVALS = 3;
+	private static final double WARM_UP_MAX_VARIATION = 0.05;
+	private static final int DRAIN_TIMEOUT_SECONDS = 10;
+	private static final double[] REPORT_PERCENTILES = { 5, 25, 50, 75, 80, 85, 90, 95, 99, 99.9, 99.99, 100 };
+	private static final int DEFAULT_MAX_ERROR_BUCKETS = 64;
+	private static final double[] METRIC_PERCENTILES = { 50, 90, 99, 99.9, 99.99 };
+	private static final String[] METRIC_QUANTILES = { "0.5", "0.9", "0.99", "0.999", "0.9999" };
+	private static final String[] REPORT_LABELS = { "5%", "25%", "50%", "75%", "80%", "85%", "90%", "95%", "99%", "99.9%",
+			"99.99%", "max" };
+	private static final double[] OVERHEAD_PERCENTILES = { 50, 99, 99.9 };
+	private static final String[] OVERHEAD_LABELS = { "p50", "p99", "p99.9" };
+	// warn when the runner's floor is this share of a measured percentile or of its maximum request rate
+	private static final double OVERHEAD_WARNING_SHARE = 0.1;
+	private static final double RATE_WARNING_SHARE = 0.5;
+	// a worker running on a CPU this share of the time cannot generate more load
+	private static final double CPU_BOUND_SHARE = 0.9;
+	private static final double FAIRNESS_WARNING = 0.9;
+	// an objective is breached early only if it cannot be met even at this many times the current request rate
+	private static final double PROJECTION_MARGIN = 2;
 
 	protected volatile String lastLog;
 
@@ -51,10 +87,17 @@ public class ThroughputRunner
 	};
 
 	private final BiConsumer<String, Throwable> printer;
+	private final TimeUnit reportUnit;
 
 	public ThroughputRunner(final BiConsumer<String, Throwable> printer)
+	{
+		this(printer, TimeUnit.MILLISECONDS);
+	}
+
+	public ThroughputRunner(final BiConsumer<String, Throwable> printer, final TimeUnit reportUnit)
 	{
 		this.printer = printer;
+		this.reportUnit = reportUnit;
 	}
 
 	public static Builder ofAction(final Supplier<Observable<?>> action)
@@ -65,12 +108,14 @@ public class ThroughputRunner
 	public class Daemon
 	{
 		private Action0 runner;
+		private final String metricsAddress;
 		private volatile boolean started = false;
-		private volatile long start;
+		private MetricsServer metricsServer;
 
-		private Daemon(final Action0 runner)
+		private Daemon(final Action0 runner, final String metricsAddress)
 		{
 			this.runner = runner;
+			this.metricsAddress = metricsAddress;
 		}
 
 		public String log()
@@ -88,9 +133,16 @@ public class ThroughputRunner
 			return ThroughputRunner.this.printErrors();
 		}
 
+		public int inFlight()
+		{
+			final InFlightLimiter l = ThroughputRunner.this.limiter;
+			return l == null ? 0 : l.inFlight();
+		}
+
 		public String stats()
 		{
-			return ThroughputRunner.this.printStats(Math.max((int) (System.currentTimeMillis() - start) / 1000, 1));
+			return ThroughputRunner.this.printStats(
+					Math.max((int) TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - measureStart), 1));
 		}
 
 		public void start()
@@ -101,12 +153,38 @@ public class ThroughputRunner
 				{
 					final Scheduler.Worker worker = Schedulers.io().createWorker();
 					worker.schedule(runner);
-					this.start = System.currentTimeMillis();
 					this.started = true;
 				}
 			}
 		}
 
+		/**
+		 * @return request and error counters, in-flight gauge, request rate and request time summaries in the Prometheus
+		 * text format. Percentiles are the snapshot taken every <code>logSleepSeconds</code>, so reading them is cheap.
+		 */
+		public String metrics()
+		{
+			return ThroughputRunner.this.metrics();
+		}
+
+		/**
+		 * Serves {@link #metrics()} on <code>http://host:port/metrics</code> until the daemon is stopped. Listens on the
+		 * loopback address, or on the {@link Builder#metricsAddress(String)} if set.
+		 * @param port port to listen on, <code>0</code> for any free port.
+		 * @return the port listened on.
+		 */
+		public int serveMetrics(final int port) throws IOException
+		{
+			synchronized (this)
+			{
+				if (metricsServer == null)
+				{
+					metricsServer = new MetricsServer(metricsAddress, port, ThroughputRunner.this::metrics);
+				}
+				return metricsServer.port();
+			}
+		}
+
 		public void stop()
 		{
 			synchronized (this)
@@ -115,6 +193,11 @@ public class ThroughputRunner
 				{
 					ThroughputRunner.this.stop();
 				}
+				if (metricsServer != null)
+				{
+					metricsServer.stop();
+					metricsServer = null;
+				}
 			}
 		}
 	}
@@ -129,6 +212,26 @@ public class ThroughputRunner
 		private BiConsumer<String, Throwable> printer = LOG::error;
 		private int logSleepSeconds = 1;
 		private boolean stress = true;
+		private TimeUnit reportUnit = TimeUnit.MILLISECONDS;
+		private double rate = 0;
+		private int maxInFlight = 0;
+		private LoadProfile profile = null;
+		private int warmUpSeconds = 0;
+		private boolean autoWarmUp = false;
+		private Engine engine = Engine.PLATFORM;
+		private int intervalSeconds = 0;
+		private File intervalLog = null;
+		private String coordinator = System.getProperty(Coordinator.ADDRESS_PROPERTY);
+		private String metricsAddress = null;
+		private File chartDirectory = null;
+		private int maxErrorBuckets = DEFAULT_MAX_ERROR_BUCKETS;
+		private int calibrationSeconds = 0;
+		private boolean emissions = false;
+		private File baseline = null;
+		private File saveResult = null;
+		private final List<Slo> slos = new ArrayList<>();
+		private AutoTune autoTune = null;
+		private final Scenario scenario = new Scenario();
 
 		public Builder action(final Supplier<Observable<?>> action)
 		{
@@ -136,6 +239,18 @@ public class ThroughputRunner
 			return this;
 		}
 
+		/**
+		 * Adds a named action to a mix: every request runs one of the named actions, picked at random in proportion to its
+		 * weight, e.g. <code>action("read", 70, ...).action("search", 25, ...).action("write", 5, ...)</code>. In open-loop
+		 * mode an action gets its share of the <code>rate</code>. Every action gets its own statistics and histogram besides
+		 * the combined ones. Replaces the single unnamed action.
+		 */
+		public Builder action(final String name, final double weight, final Supplier<Observable<?>> action)
+		{
+			this.scenario.add(name, weight, action);
+			return this;
+		}
+
 		public Builder(final Supplier<Observable<?>> action)
 		{
 			this.action = action;
@@ -193,12 +308,253 @@ public class ThroughputRunner
 			return this;
 		}
 
-		private void performance(final ThroughputRunner throughputRunner)
+		public Builder reportUnit(final TimeUnit reportUnit)
+		{
+			this.reportUnit = reportUnit;
+			return this;
+		}
+
+		/**
+		 * Switches to open-loop mode: requests are started on a fixed timeline of <code>requestsPerSecond</code>
+		 * shared by all threads, and latency is measured from the intended start time. Service time measured from the
+		 * actual start is reported alongside. <code>0</code> (default) keeps the closed loop.
+		 */
+		public Builder rate(final double requestsPerSecond)
+		{
+			this.rate = requestsPerSecond;
+			return this;
+		}
+
+		/**
+		 * Caps the number of outstanding requests, which bounds the load of <code>stress</code> mode.
+		 * <code>0</code> (default) means unbounded.
+		 */
+		public Builder maxInFlight(final int maxInFlight)
+		{
+			this.maxInFlight = maxInFlight;
+			return this;
+		}
+
+		/**
+		 * Runs the stages of the profile one after another instead of a single run, then reports the saturation point.
+		 * Every stage runs for <code>testTimeInSeconds</code>.
+		 */
+		public Builder profile(final LoadProfile profile)
+		{
+			this.profile = profile;
+			return this;
+		}
+
+		/**
+		 * Runs the action for <code>warmUpSeconds</code> before measuring. Warm-up samples are reported separately and
+		 * left out of the final statistics and histogram.
+		 */
+		public Builder warmUp(final int warmUpSeconds)
+		{
+			this.warmUpSeconds = warmUpSeconds;
+			this.autoWarmUp = false;
+			return this;
+		}
+
+		/**
+		 * Like {@link #warmUp(int)}, but ends as soon as the request rate of the last 3 log intervals varies by less than
+		 * 5%, or after <code>maxWarmUpSeconds</code>.
+		 */
+		public Builder autoWarmUp(final int maxWarmUpSeconds)
+		{
+			this.warmUpSeconds = maxWarmUpSeconds;
+			this.autoWarmUp = true;
+			return this;
+		}
+
+		/**
+		 * Selects how simulated clients are executed. Default {@link Engine#PLATFORM}.
+		 */
+		public Builder engine(final Engine engine)
+		{
+			this.engine = engine;
+			return this;
+		}
+
+		/**
+		 * Length of the intervals whose percentiles are printed separately, every sample counted in exactly one interval.
+		 * Default <code>0</code>: no intervals in timed runs, <code>17 * logSleepSeconds</code> in daemon mode.
+		 */
+		public Builder intervalSeconds(final int intervalSeconds)
+		{
+			this.intervalSeconds = intervalSeconds;
+			return this;
+		}
+
+		/**
+		 * Appends the histogram of every interval to a compact binary log, to be replayed offline with
+		 * {@link org.marekasf.troughput.histogram.HistogramLogReader}. Without <code>intervalSeconds</code> a timed run logs
+		 * every <code>logSleepSeconds</code>.
+		 */
+		public Builder intervalLog(final File intervalLog)
+		{
+			this.intervalLog = intervalLog;
+			return this;
+		}
+
+		/**
+		 * <code>host:port</code> of a {@link Coordinator} the counters and histogram are streamed to, every
+		 * <code>logSleepSeconds</code> and at the end of the run. Default: the <code>throughput.coordinator</code> system
+		 * property, set for the workers started by {@link Coordinator#launch(Class, String...)}. Cannot be combined with a
+		 * load profile or auto-tune, which run several stages.
+		 */
+		public Builder coordinator(final String address)
+		{
+			this.coordinator = address;
+			return this;
+		}
+
+		/**
+		 * Host name or IP address the {@link Daemon#serveMetrics(int)} server listens on, e.g. <code>0.0.0.0</code> for
+		 * every interface. Default: the loopback address, so the metrics can only be scraped from this host.
+		 */
+		public Builder metricsAddress(final String host)
 		{
+			this.metricsAddress = host;
+			return this;
+		}
+
+		/**
+		 * Writes the percentile curve and the latency over time (p50, p99 and max of every interval) as PNG and SVG files
+		 * to the given directory instead of opening a window, in the background and with no display needed.
+		 * Without <code>intervalSeconds</code> a timed run charts every <code>logSleepSeconds</code>.
+		 */
+		public Builder chartDirectory(final File chartDirectory)
+		{
+			this.chartDirectory = chartDirectory;
+			return this;
+		}
+
+		/**
+		 * Maximum number of distinct error buckets (exception class and top stack frames). Errors beyond it are counted in
+		 * one overflow bucket. Default 64.
+		 */
+		public Builder maxErrorBuckets(final int maxErrorBuckets)
+		{
+			this.maxErrorBuckets = maxErrorBuckets;
+			return this;
+		}
+
+		/**
+		 * Before every run, runs a no-op action for <code>calibrationSeconds</code> with the same threads, engine and limits,
+		 * to measure the runner's own request time and maximum request rate. The seconds include an auto warm-up of at
+		 * most half of them, the rest is measured. The final report prints this floor beside the results and warns when
+		 * they come close to it. Default <code>0</code>: no calibration.
+		 */
+		public Builder calibrate(final int calibrationSeconds)
+		{
+			this.calibrationSeconds = calibrationSeconds;
+			return this;
+		}
+
+		/**
+		 * Measures the items of streaming actions: time from the intended start to the first item, gaps between items,
+		 * items per request and item rate. Default <code>false</code>: the action's Observable is not instrumented.
+		 */
+		public Builder emissions(final boolean measure)
+		{
+			this.emissions = measure;
+			return this;
+		}
+
+		/**
+		 * Compares the result of the run with a result saved by {@link #saveResult(File)}, e.g. on the previous build, and
+		 * prints a verdict per metric: faster, slower or no significant change. See {@link Comparison}. Skipped with a
+		 * message if the file does not exist yet. Not used by load profiles.
+		 */
+		public Builder baseline(final File baseline)
+		{
+			this.baseline = baseline;
+			return this;
+		}
+
+		/**
+		 * Saves the result of the run, counters, sample rates and the full histogram, to be used as a
+		 * {@link #baseline(File)} later. Written after the comparison, so the same file can hold a rolling baseline.
+		 * Not used by load profiles.
+		 */
+		public Builder saveResult(final File file)
+		{
+			this.saveResult = file;
+			return this;
+		}
+
+		/**
+		 * @return the configuration of the calibration run: a closed loop of a no-op action, auto warm-up within the
+		 * calibration seconds, nothing printed or written.
+		 */
+		private Builder calibration()
+		{
+			final int warmUp = calibrationSeconds / 2;
+			return create(Observable::empty). //
+					threads(threads). //
+					testTimeInSeconds(calibrationSeconds - warmUp). //
+					histogram(false). //
+					graph(false). //
+					printer((text, t) -> {
+					}). //
+					logSleepSeconds(logSleepSeconds). //
+					stress(stress). //
+					reportUnit(reportUnit). //
+					maxInFlight(maxInFlight). //
+					autoWarmUp(warmUp). //
+					engine(engine). //
+					coordinator(null);
+		}
+
+		/**
+		 * Adds a service level objective, e.g. <code>slo(Slo.percentileBelow(99, 20, MILLISECONDS))</code>. A timed run
+		 * stops as soon as an objective cannot be met any more; {@link ThroughputResult#getSloViolations()} lists the
+		 * objectives the run did not meet.
+		 */
+		public Builder slo(final Slo slo)
+		{
+			this.slos.add(slo);
+			return this;
+		}
+
+		/**
+		 * Searches for the number of threads (or request rate) with the highest throughput meeting a latency target,
+		 * running a stage of <code>testTimeInSeconds</code> per tried value, and reports the chosen value and the measured
+		 * curve. Replaces the <code>threads</code> or <code>rate</code> setting and a load profile.
+		 */
+		public Builder autoTune(final AutoTune autoTune)
+		{
+			this.autoTune = autoTune;
+			return this;
+		}
+
+		private ThroughputResult performance(final ThroughputRunner throughputRunner)
+		{
+			if (coordinator != null && testTimeInSeconds > 0 && (autoTune != null || profile != null))
+			{
+				// every stage would open a new connection, the coordinator accepts a single one per worker
+				throw new IllegalStateException("A coordinator merges a single run per worker, " //
+						+ (autoTune != null ? "auto-tune" : "a load profile") + " runs several stages: run it without coordinator "
+						+ coordinator);
+			}
 			try
 			{
-				throughputRunner.performance(threads, testTimeInSeconds, action, histogram, histogramGraph, logSleepSeconds,
-						stress);
+				if (autoTune != null && testTimeInSeconds > 0)
+				{
+					final List<ThroughputResult> stages = throughputRunner.autoTune(this);
+					final int best = autoTune.bestStage(stages);
+					return stages.get(best < 0 ? stages.size() - 1 : best);
+				}
+				else if (profile != null && testTimeInSeconds > 0)
+				{
+					final List<ThroughputResult> stages = throughputRunner.profile(this);
+					return stages.get(stages.size() - 1);
+				}
+				else
+				{
+					return throughputRunner.performance(this);
+				}
 			}
 			catch (InterruptedException e)
 			{
@@ -206,16 +562,20 @@ public class ThroughputRunner
 			}
 		}
 
-		public void run()
+		/**
+		 * Runs the test and prints the report.
+		 * @return the result of the run, of the last stage of a load profile, or of the chosen stage of an auto-tune search.
+		 */
+		public ThroughputResult run()
 		{
-			final ThroughputRunner throughputRunner = new ThroughputRunner(printer);
-			performance(throughputRunner);
+			final ThroughputRunner throughputRunner = new ThroughputRunner(printer, reportUnit);
+			return performance(throughputRunner);
 		}
 
 		public Daemon daemon()
 		{
-			final ThroughputRunner throughputRunner = new ThroughputRunner(printer);
-			return throughputRunner.daemon(() -> {
+			final ThroughputRunner throughputRunner = new ThroughputRunner(printer, reportUnit);
+			return throughputRunner.daemon(metricsAddress, () -> {
 				try
 				{
 					performance(throughputRunner);
@@ -228,69 +588,165 @@ public class ThroughputRunner
 		}
 	}
 
-	private Daemon daemon(final Action0 runner)
+	private Daemon daemon(final String metricsAddress, final Action0 runner)
 	{
-		return new Daemon(runner);
+		return new Daemon(runner, metricsAddress);
 	}
 
 	private final LongAdder requestCount = new LongAdder();
 	private final LongAdder loopCount = new LongAdder();
 	private final LongAdder errorCount = new LongAdder();
-	private final LongAdder totalRequestTimeMs = new LongAdder();
-	private final LongAdder totalLoopTimeMs = new LongAdder();
-	private final AtomicLong maxRequestTimeMs = new AtomicLong();
+	private final LongAdder totalRequestTimeNs = new LongAdder();
+	private final LongAdder totalServiceTimeNs = new LongAdder();
+	private final LongAdder totalLoopTimeNs = new LongAdder();
+	private final AtomicLong maxRequestTimeNs = new AtomicLong();
 
 	private final AtomicBoolean test = new AtomicBoolean(true);
-	private final ConcurrentHashMap<String, Throwable> errors = new ConcurrentHashMap<>();
-	private final ConcurrentHashMap<String, LongAdder> errorsHistogram = new ConcurrentHashMap<>();
-	private volatile AdaptiveHistogram histogram = null;
+	private volatile Scenario scenario = null;
+	private volatile Emissions emissions = null;
+	private volatile ErrorBuckets errors = new ErrorBuckets(DEFAULT_MAX_ERROR_BUCKETS);
+	volatile HistogramRecorder histogram = null;  // package-private, drained by the recording benchmarks
+	private volatile HistogramRecorder serviceHistogram = null;
+	private volatile double rate = 0;
+	private volatile InFlightLimiter limiter = null;
+	private volatile long measureStart = System.nanoTime();
+	private volatile float[] percentileSnapshot = null;
+	private volatile float[] intervalSnapshot = null;
+	private volatile JvmStats jvmStart = null;
+	private volatile JvmStats jvmSample = null;
+	private volatile JvmStats jvmEnd = null;
+	private long sampleRequests = 0;
 
 	protected void stop()
 	{
 		test.set(false);
 	}
 
-	protected void performance(final int threads, final int testTimeInSeconds, final Supplier<Observable<?>> action,
-			final boolean displayHistogram, final boolean displayHistogramGraph, final int logSleepSeconds, final boolean stress)
-			throws InterruptedException
+	protected ThroughputResult performance(final Builder config) throws InterruptedException
 	{
-		requestCount.reset();
-		loopCount.reset();
-		errorCount.reset();
-		totalRequestTimeMs.reset();
-		totalLoopTimeMs.reset();
-		maxRequestTimeMs.set(0);
+		final ThroughputResult result = execute(config, config.threads, config.rate);
+		compare(config, result);
 
-		test.set(true);
-		errors.clear();
-		errorsHistogram.clear();
+		if (config.histogram && config.histogramGraph && config.chartDirectory == null)
+		{
+			if (GraphicsEnvironment.isHeadless())
+			{
+				print("No display, histogram graph skipped. Use chartDirectory to write it to files.", null);
+			}
+			else
+			{
+				XYHistogramChart.display(result.getHistogram(), "Request time (" + unitSymbol() + ")", unitScale());
+			}
+		}
+		return result;
+	}
 
-		histogram = new AdaptiveHistogram();
+	protected List<ThroughputResult> profile(final Builder config) throws InterruptedException
+	{
+		final LoadProfile profile = config.profile;
+		final List<ThroughputResult> stages = new ArrayList<>();
+		for (int stage = 0; stage < profile.stages(); ++stage)
+		{
+			final int threads = profile.threads(stage, config.threads);
+			final double stageRate = profile.rate(stage, config.rate);
+			str().print("\n"). //
+					print("LOAD PROFILE STAGE " + (stage + 1) + " of " + profile.stages() + ": threads " + threads //
+							+ (stageRate > 0 ? ", rate " + stageRate + " r/s" : "")). //
+					flush();
 
-		final ExecutorService executorService = Executors.newFixedThreadPool(threads + 16);
-		final Scheduler scheduler = Schedulers.from(executorService);
+			stages.add(execute(config, threads, stageRate));
+		}
+		printProfile(profile, stages);
+		return stages;
+	}
 
-		IntStream.range(0, threads).forEach(v -> executorService.execute(() -> {
+	protected List<ThroughputResult> autoTune(final Builder config) throws InterruptedException
+	{
+		final AutoTune tune = config.autoTune;
+		final AutoTune.Search search = tune.start();
+		final List<ThroughputResult> stages = new ArrayList<>();
+		for (double value = search.first(); !Double.isNaN(value); value = search.next(stages.get(stages.size() - 1)))
+		{
+			final int threads = tune.isRate() ? config.threads : (int) value;
+			final double stageRate = tune.isRate() ? value : config.rate;
+			str().print("\n"). //
+					print("AUTO-TUNE STAGE " + (stages.size() + 1) + ": threads " + threads //
+							+ (stageRate > 0 ? ", rate " + stageRate + " r/s" : "")). //
+					flush();
+
+			stages.add(execute(config, threads, stageRate));
+		}
+		printAutoTune(tune, stages);
+		return stages;
+	}
+
+	private ThroughputResult execute(final Builder config, final int threads, final double rate)
+			throws InterruptedException
+	{
+		final int testTimeInSeconds = config.testTimeInSeconds;
+		final Supplier<Observable<?>> action = config.action;
+		final boolean stress = config.stress;
+		final ThroughputResult floor = config.calibrationSeconds > 0 ? calibrate(config, threads) : null;
+		reset(config, rate);
+
+		final ExecutorService executorService = config.engine.executor(threads);
+		final ExecutorService callbackService = config.engine.callbacks(executorService);
+		final Scheduler scheduler = Schedulers.from(callbackService);
+
+		final long scheduleStart = System.nanoTime();
+		final AtomicLong ticket = new AtomicLong();
+
+		final CountDownLatch workers = new CountDownLatch(threads);
+		final List<WorkerStats> clients = IntStream.range(0, threads).mapToObj(v -> new WorkerStats()).collect(
+				Collectors.toList());
+		clients.forEach(client -> executorService.execute(() -> {
+			client.started();
 			do
 			{
-				final long start = System.currentTimeMillis();
+				final long intended = rate > 0 ? awaitIntendedStart(scheduleStart, ticket.getAndIncrement()) //
+						: System.nanoTime();
+				if (!test.get() || !limiter.acquire(test::get))
+				{
+					break;
+				}
+				if (intended - measureStart < 0)
+				{
+					// scheduled before the warm-up cut-over, while the clients were paused
+					limiter.release();
+					continue;
+				}
+				final Scenario mix = scenario;
+				final Scenario.Action picked = mix == null ? null : mix.pick();
+				final Action0 permit = limiter.permit();
+				final long start = System.nanoTime();
 				long sample;
+				Observable<?> observable = null;
 				try
 				{
-					final Observable<?> observable = action.get() //
+					final Observable<?> source = (picked == null ? action : picked.action).get();
+					final Emissions items = emissions;
+					observable = (items == null ? source : items.instrument(source, intended)) //
 							.observeOn(scheduler) //
-							.doOnCompleted(() -> registerExecution(start, maxRequestTimeMs, totalRequestTimeMs, requestCount,
-									histogram)) //
+							.doOnCompleted(() -> client.completed(registerExecution(intended, start, picked))) //
 							.doOnError(throwable -> {
-								registerExecution(start, maxRequestTimeMs, totalRequestTimeMs, requestCount, histogram);
+								client.completed(registerExecution(intended, start, picked));
+								client.failed();
 								errorCount.increment();
-								errors.putIfAbsent(throwable.getMessage() == null ? "" : throwable.getMessage(), throwable);
-								increment(errorsHistogram, throwable.getMessage() == null ? "" : throwable.getMessage());
-							});
+								if (picked != null)
+								{
+									picked.errorCount.increment();
+								}
+								errors.register(throwable, System.nanoTime() - intended);
+							}) //
+							.doOnTerminate(permit) //
+							.doOnUnsubscribe(permit);
 
 					if (stress)
 					{
-						observable.subscribe();
+						// errors are already handled in doOnError, without a handler they would be rethrown on the callback thread
+						observable.subscribe(value -> {
+						}, throwable -> {
+						});
 					}
 					else
 					{
@@ -304,64 +760,724 @@ public class ThroughputRunner
 						}
 					}
 
-					sample = System.currentTimeMillis() - start;
+					sample = System.nanoTime() - start;
 				}
 				catch (final Throwable t)
 				{
-					sample = System.currentTimeMillis() - start;
+					sample = System.nanoTime() - start;
+					if (observable == null)
+					{
+						// failed before subscription, neither doOnTerminate nor doOnUnsubscribe will release the slot
+						permit.call();
+					}
+					client.failed();
 					errorCount.increment();
-					errors.putIfAbsent(t.getMessage() == null ? "" : t.getMessage(), t);
-					increment(errorsHistogram, t.getMessage() == null ? "" : t.getMessage());
+					if (picked != null)
+					{
+						picked.errorCount.increment();
+					}
+					errors.register(t, sample);
 				}
-				max(maxRequestTimeMs, sample);
-				totalLoopTimeMs.add(System.currentTimeMillis() - start);
+				max(maxRequestTimeNs, sample);
+				totalLoopTimeNs.add(System.nanoTime() - start);
 				loopCount.increment();
 			} while (test.get());
+			workers.countDown();
 		}));
 
-		final long start = System.currentTimeMillis();
-		final long end = start + testTimeInSeconds * 1000;
-
-		int i = 0;
+		final long start = warmUp(config, clients);
+		final long end = start + TimeUnit.SECONDS.toNanos(testTimeInSeconds);
+		jvmStart = JvmStats.sample();
+		jvmSample = jvmStart;
+		clients.forEach(WorkerStats::start);
+		sampleRequests = requestCount.longValue();
+
+		final long logNs = TimeUnit.SECONDS.toNanos(config.logSleepSeconds);
+		final long intervalNs = TimeUnit.SECONDS.toNanos(
+				config.intervalSeconds > 0 ? config.intervalSeconds : testTimeInSeconds == 0 ? 17 * config.logSleepSeconds //
+						: config.intervalLog != null || config.chartDirectory != null ? config.logSleepSeconds : 0);
+		long nextLog = start + logNs;
+		long nextInterval = intervalNs > 0 ? start + intervalNs : Long.MAX_VALUE;
+		int interval = 0;
+		HistogramLogWriter intervalLog = openIntervalLog(config.intervalLog);
+		DataOutputStream coordinator = connect(config.coordinator);
+		final ChartRenderer charts = config.chartDirectory == null ? null
+				: new ChartRenderer(config.chartDirectory, unitScale(), unitSymbol());
+		long intervalStartMillis = System.currentTimeMillis();
+		final List<Double> sampleRates = new ArrayList<>();
+		Slo breached = null;
+		long sampleStart = start;
+		long sampleStartRequests = requestCount.longValue();
 		do
 		{
-			Thread.sleep(logSleepSeconds * 1000);
-			final long testTimeMs = System.currentTimeMillis() - start;
-
-			final double avgExecTimeMs = totalRequestTimeMs.doubleValue() / requestCount.doubleValue();
-
+			final long wait = Math.min(nextLog, nextInterval) - System.nanoTime();
+			if (wait > 0)
+			{
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}
+			final long now = System.nanoTime();
 
-			str().print(""). //
-					print("Sample results :"). //
-					print(" - request rate  : " + (requestCount.doubleValue() * 1000. / testTimeMs) + " r/s"). //
-					print(" - error rate    : " + (errorCount.doubleValue() * 1000. / testTimeMs) + " e/s"). //
-					print(" - max exec time : " + maxRequestTimeMs.get() + " ms"). //
-					print(" - avg exec time : " + avgExecTimeMs + " ms\n"). //
-					flush();
+			if (now >= nextInterval)
+			{
+				final HistogramRecorder recorder = histogram;
+				synchronized (recorder)
+				{
+					final Printer print = str();
+					final AdaptiveHistogram completed = recorder.swapInterval();
+					intervalSnapshot = completed.getValuesForPercentiles(METRIC_PERCENTILES);
+					printPercentiles(print, "interval " + ++interval + " of " + time(intervalNs), completed);
+					print.flush();
+					final long intervalEndMillis = System.currentTimeMillis();
+					intervalLog = appendInterval(intervalLog, intervalStartMillis, intervalEndMillis, completed);
+					if (charts != null)
+					{
+						charts.interval((now - start) / NANOS_PER_SECOND, completed);
+					}
+					intervalStartMillis = intervalEndMillis;
+				}
+				nextInterval += intervalNs;
+			}
+			if (now < nextLog)
+			{
+				continue;
+			}
+			nextLog += logNs;
+			final long requests = requestCount.longValue();
+			sampleRates.add((requests - sampleStartRequests) * NANOS_PER_SECOND / (now - sampleStart));
+			sampleStart = now;
+			sampleStartRequests = requests;
+
+			breached = testTimeInSeconds > 0 ? breached(config.slos, now - start, end - now) : null;
+			if (breached != null)
+			{
+				str().print(""). //
+						print("SLO BREACHED: " + breached + " cannot be met any more, aborting after " + time(now - start)
+								+ "\n"). //
+						flush();
+				break;
+			}
 
-			if (testTimeInSeconds == 0 && ++i > 16)
+			percentileSnapshot = histogram.getHistogram().getValuesForPercentiles(METRIC_PERCENTILES);
+			if (serviceHistogram != null)
 			{
-				i = 0;
-				printHistogram();
-				histogram = new AdaptiveHistogram();
+				serviceHistogram.flush();
+			}
+			clients.forEach(WorkerStats::flush);
+			errors.flush();
+			final Emissions items = emissions;
+			if (items != null)
+			{
+				items.flush();
 			}
-		} while (test.get() && (testTimeInSeconds == 0 || System.currentTimeMillis() < end));
+			final Scenario mix = scenario;
+			if (mix != null)
+			{
+				mix.flush();
+			}
+			printSample(now - start);
+			coordinator = sendSnapshot(coordinator, false, threads, now - start);
+		} while (test.get() && (testTimeInSeconds == 0 || System.nanoTime() < end));
 
+		final long testTimeNs = System.nanoTime() - start;
 		test.set(false);
-		executorService.shutdown();
+		// let outstanding requests finish: callbacks rejected by a shut down executor would leave blocked clients hanging,
+		// and the next profile stage resets the counters
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DRAIN_TIMEOUT_SECONDS);
+		final boolean finished = workers.await(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		while (limiter.inFlight() > 0 && System.nanoTime() < deadline)
+		{
+			Thread.sleep(1);
+		}
+		// before the shutdown ends the client threads and their allocation counters
+		jvmEnd = JvmStats.sample();
+		clients.forEach(WorkerStats::end);
+		if (finished)
+		{
+			executorService.shutdown();
+		}
+		else
+		{
+			// clients still blocked on requests that never complete: the interrupt unsubscribes them, releasing their slots
+			executorService.shutdownNow();
+		}
+		callbackService.shutdown();
+
+		if (intervalLog != null)
+		{
+			// the samples since the last swap form a shorter last interval
+			final HistogramRecorder recorder = histogram;
+			synchronized (recorder)
+			{
+				intervalLog = appendInterval(intervalLog, intervalStartMillis, System.currentTimeMillis(), recorder.swapInterval());
+			}
+			closeIntervalLog(intervalLog);
+		}
+		close(sendSnapshot(coordinator, true, threads, testTimeNs));
 
 		printErrors();
 
-		printStats(testTimeInSeconds);
+		printStats(breached == null ? testTimeInSeconds : Math.max((int) Math.round(testTimeNs / NANOS_PER_SECOND), 1));
+		printWorkers(clients);
 
-		if (displayHistogram)
+		if (config.histogram)
 		{
 			printHistogram();
-			if (displayHistogramGraph)
+		}
+
+		final ThroughputResult result = new ThroughputResult(threads, rate, testTimeNs, requestCount.longValue(),
+				errorCount.longValue(), totalRequestTimeNs.longValue(), maxRequestTimeNs.get(), histogram.getHistogram(),
+				sampleRates.stream().mapToDouble(Double::doubleValue).toArray());
+		printSlos(config.slos, result, breached);
+
+		if (floor != null)
+		{
+			printOverhead(floor, result);
+		}
+
+		if (charts != null)
+		{
+			charts.render("request time (" + unitSymbol() + ")", result.getHistogram()).whenComplete((files, t) -> {
+				if (t != null)
+				{
+					printer.accept("Cannot write charts to " + config.chartDirectory, t);
+				}
+				else
+				{
+					print("Charts written: " + files, null);
+				}
+			});
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return the first objective that cannot be met any more, even if all the requests in the remaining time succeed
+	 * within the limits, <code>null</code> if there is none.
+	 */
+	private Slo breached(final List<Slo> slos, final long elapsedNs, final long remainingNs)
+	{
+		if (slos.isEmpty() || elapsedNs <= 0)
+		{
+			return null;
+		}
+		final long requests = requestCount.longValue();
+		// the rate may still grow, e.g. after a slow start
+		final double maxRequests = requests + PROJECTION_MARGIN * requests * Math.max(remainingNs, 0) / elapsedNs;
+		final AdaptiveHistogram h = histogram.getHistogram();
+		return slos.stream().filter(slo -> slo.breached(h, requests, errorCount.longValue(), maxRequests)).findFirst().orElse(
+				null);
+	}
+
+	/**
+	 * Checks the objectives on the final result, prints them and records the violations in the result.
+	 */
+	private void printSlos(final List<Slo> slos, final ThroughputResult result, final Slo breached)
+	{
+		if (slos.isEmpty())
+		{
+			return;
+		}
+		final List<Slo> violations = slos.stream().filter(slo -> slo == breached || !slo.met(result)).collect(
+				Collectors.toList());
+		result.slo(violations, breached != null);
+		final Printer print = str().print("SLO " + (violations.isEmpty() ? "MET" : "NOT MET") + (breached != null
+				? ", run aborted" : ""));
+		slos.forEach(slo -> print.print("  " + (violations.contains(slo) ? "FAILED " : "ok     ") + slo));
+		print.print("").flush();
+	}
+
+	/**
+	 * Compares the result with the baseline and saves it, as configured.
+	 */
+	private void compare(final Builder config, final ThroughputResult result)
+	{
+		if (config.baseline != null)
+		{
+			if (!config.baseline.exists())
+			{
+				print("No baseline " + config.baseline + " yet, comparison skipped", null);
+			}
+			else
+			{
+				try
+				{
+					final Comparison comparison = result.compareTo(ThroughputResult.read(config.baseline));
+					str().print(""). //
+							print("BASELINE COMPARISON with " + config.baseline). //
+							print(comparison.report(unitScale(), unitSymbol())). //
+							print(comparison.isSlower() ? "  SLOWER than the baseline\n" : ""). //
+							flush();
+				}
+				catch (final IOException e)
+				{
+					printer.accept("Cannot read baseline " + config.baseline, e);
+				}
+			}
+		}
+		if (config.saveResult != null)
+		{
+			try
+			{
+				result.write(config.saveResult);
+			}
+			catch (final IOException e)
+			{
+				printer.accept("Cannot save result to " + config.saveResult, e);
+			}
+		}
+	}
+
+	/**
+	 * Measures the runner's own cost: the request time and maximum request rate of a no-op action run by a separate runner
+	 * with the same threads, engine and limits.
+	 */
+	private ThroughputResult calibrate(final Builder config, final int threads) throws InterruptedException
+	{
+		str().print(""). //
+				print("CALIBRATING runner overhead: no-op action, " + threads + " threads, " + config.calibrationSeconds
+						+ " s"). //
+				flush();
+		final Builder calibration = config.calibration().threads(threads);
+		return new ThroughputRunner(calibration.printer, reportUnit).execute(calibration, threads, 0);
+	}
+
+	/**
+	 * Formats the counters and the last percentile snapshots in the Prometheus text exposition format. Times in seconds.
+	 */
+	private String metrics()
+	{
+		final StringBuilder out = new StringBuilder();
+		final InFlightLimiter l = limiter;
+		final long elapsedNs = System.nanoTime() - measureStart;
+		metric(out, "throughput_requests_total", "counter", "Completed requests.", requestCount.longValue());
+		metric(out, "throughput_errors_total", "counter", "Failed requests.", errorCount.longValue());
+		metric(out, "throughput_loops_total", "counter", "Client loop iterations.", loopCount.longValue());
+		metric(out, "throughput_in_flight", "gauge", "Outstanding requests.", l == null ? 0 : l.inFlight());
+		metric(out, "throughput_request_rate", "gauge", "Completed requests per second since the start of measurement.",
+				elapsedNs <= 0 ? 0 : requestCount.doubleValue() * NANOS_PER_SECOND / elapsedNs);
+		metric(out, "throughput_request_time_max_seconds", "gauge", "Longest request time.",
+				maxRequestTimeNs.get() / NANOS_PER_SECOND);
+		summary(out, "throughput_request_time_seconds", "Request time since the start of measurement.", percentileSnapshot,
+				requestCount.longValue(), totalRequestTimeNs.doubleValue());
+		summary(out, "throughput_interval_request_time_seconds", "Request time quantiles of the last completed interval.",
+				intervalSnapshot, -1, 0);
+		return out.toString();
+	}
+
+	private static void metric(final StringBuilder out, final String name, final String type, final String help,
+			final double value)
+	{
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+		out.append(name).append(' ').append(value).append('\n');
+	}
+
+	/**
+	 * @param count number of observations, negative to leave out <code>_count</code> and <code>_sum</code>. The quantiles
+	 * are then typed as a gauge, as a summary without them is not well-formed.
+	 */
+	private static void summary(final StringBuilder out, final String name, final String help, final float[] quantiles,
+			final long count, final double sumNs)
+	{
+		if (quantiles == null)
+		{
+			return;
+		}
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(count < 0 ? " gauge\n" : " summary\n");
+		for (int i = 0; i < quantiles.length; ++i)
+		{
+			out.append(name).append("{quantile=\"").append(METRIC_QUANTILES[i]).append("\"} ").append(
+					quantiles[i] / NANOS_PER_SECOND).append('\n');
+		}
+		if (count >= 0)
+		{
+			out.append(name).append("_sum ").append(sumNs / NANOS_PER_SECOND).append('\n');
+			out.append(name).append("_count ").append(count).append('\n');
+		}
+	}
+
+	/**
+	 * Resets counters, histograms and errors for a new run. Package-private for the recording benchmarks.
+	 */
+	void reset(final Builder config, final double rate)
+	{
+		this.rate = rate;
+
+		requestCount.reset();
+		loopCount.reset();
+		errorCount.reset();
+		totalRequestTimeNs.reset();
+		totalServiceTimeNs.reset();
+		totalLoopTimeNs.reset();
+		maxRequestTimeNs.set(0);
+		measureStart = System.nanoTime();
+
+		test.set(true);
+		errors = new ErrorBuckets(config.maxErrorBuckets);
+		scenario = config.scenario.isEmpty() ? null : config.scenario.reset();
+		emissions = config.emissions ? new Emissions() : null;
+		percentileSnapshot = null;
+		intervalSnapshot = null;
+		jvmStart = null;
+		jvmSample = null;
+		jvmEnd = null;
+
+		limiter = new InFlightLimiter(config.maxInFlight);
+		histogram = new HistogramRecorder();
+		serviceHistogram = rate > 0 ? new HistogramRecorder() : null;
+	}
+
+	private void printSample(final long testTimeNs)
+	{
+		final double avgExecTimeNs = totalRequestTimeNs.doubleValue() / requestCount.doubleValue();
+		final InFlightLimiter l = limiter;
+
+		final Printer print = str().print(""). //
+				print("Sample results :"). //
+				print(" - request rate  : " + (requestCount.doubleValue() * NANOS_PER_SECOND / testTimeNs) + " r/s"). //
+				print(" - error rate    : " + (errorCount.doubleValue() * NANOS_PER_SECOND / testTimeNs) + " e/s"). //
+				print(" - max exec time : " + time(maxRequestTimeNs.get())). //
+				print(" - avg exec time : " + time(avgExecTimeNs));
+		final String jvm = jvmSample();
+		if (!jvm.isEmpty())
+		{
+			print.print(jvm);
+		}
+		print.print(l == null ? "" : " - in flight     : " + l.inFlight() + "\n").flush();
+	}
+
+	/**
+	 * @return request rate, GC, heap and allocation since the previous sample, empty without JVM statistics (merged
+	 * results of coordinator workers).
+	 */
+	private String jvmSample()
+	{
+		final JvmStats last = jvmSample;
+		if (last == null)
+		{
+			return "";
+		}
+		final JvmStats current = JvmStats.sample();
+		final long requests = requestCount.longValue();
+		final double seconds = (current.nanoTime - last.nanoTime) / NANOS_PER_SECOND;
+		final long allocated = current.allocatedBytes(last);
+		jvmSample = current;
+		final String out = " - sample rate   : " + (requests - sampleRequests) / seconds + " r/s\n" //
+				+ String.format(" - gc            : %d collections, %d ms (%.1f%% of the sample)\n",
+						current.gcCount - last.gcCount, current.gcTimeMs - last.gcTimeMs, 100 * current.gcShare(last)) //
+				+ String.format(" - heap used     : %.1f MB\n", current.heapUsedBytes / MB) //
+				+ " - allocation    : " + (allocated < 0 ? "n/a" : String.format("%.1f MB/s", allocated / MB / seconds));
+		sampleRequests = requests;
+		return out;
+	}
+
+	/**
+	 * Connects to a {@link Coordinator}.
+	 * @return the stream the snapshots are written to, <code>null</code> without coordinator or if it cannot be reached.
+	 */
+	private DataOutputStream connect(final String address)
+	{
+		if (address == null || address.isEmpty())
+		{
+			return null;
+		}
+		try
+		{
+			final int colon = address.lastIndexOf(':');
+			final Socket socket = new Socket(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			out.writeInt(WorkerSnapshot.MAGIC);
+			out.writeInt(WorkerSnapshot.VERSION);
+			out.flush();
+			return out;
+		}
+		catch (final IOException | RuntimeException e)
+		{
+			printer.accept("Cannot connect to coordinator " + address, e);
+			return null;
+		}
+	}
+
+	/**
+	 * @return the stream, or <code>null</code> if sending failed and the connection was closed.
+	 */
+	private DataOutputStream sendSnapshot(final DataOutputStream out, final boolean last, final int threads,
+			final long testTimeNs)
+	{
+		if (out == null)
+		{
+			return null;
+		}
+		try
+		{
+			new WorkerSnapshot(last, threads, testTimeNs, requestCount.longValue(), errorCount.longValue(),
+					loopCount.longValue(), totalRequestTimeNs.longValue(), totalLoopTimeNs.longValue(), maxRequestTimeNs.get(),
+					histogram.getHistogram().encode(true)).write(out);
+			return out;
+		}
+		catch (final IOException e)
+		{
+			printer.accept("Cannot send snapshot to coordinator, streaming stopped", e);
+			close(out);
+			return null;
+		}
+	}
+
+	private void close(final DataOutputStream out)
+	{
+		try
+		{
+			if (out != null)
+			{
+				out.close();
+			}
+		}
+		catch (final IOException e)
+		{
+			printer.accept("Cannot close coordinator connection", e);
+		}
+	}
+
+	/**
+	 * Replaces the counters and histogram of this runner by the merged snapshots of {@link Coordinator} workers and prints
+	 * them: sample results, or the final statistics and histogram.
+	 */
+	ThroughputResult aggregate(final List<WorkerSnapshot> snapshots, final boolean last, final boolean printHistogram)
+	{
+		final long testTimeNs = snapshots.stream().mapToLong(w -> w.testTimeNs).max().orElse(0);
+		requestCount.reset();
+		requestCount.add(snapshots.stream().mapToLong(w -> w.requestCount).sum());
+		errorCount.reset();
+		errorCount.add(snapshots.stream().mapToLong(w -> w.errorCount).sum());
+		loopCount.reset();
+		loopCount.add(snapshots.stream().mapToLong(w -> w.loopCount).sum());
+		totalRequestTimeNs.reset();
+		totalRequestTimeNs.add(snapshots.stream().mapToLong(w -> w.totalRequestTimeNs).sum());
+		totalLoopTimeNs.reset();
+		totalLoopTimeNs.add(snapshots.stream().mapToLong(w -> w.totalLoopTimeNs).sum());
+		maxRequestTimeNs.set(snapshots.stream().mapToLong(w -> w.maxRequestTimeNs).max().orElse(0));
+		final HistogramRecorder merged = new HistogramRecorder();
+		snapshots.forEach(w -> merged.merge(w.decodeHistogram()));
+		histogram = merged;
+
+		if (!last)
+		{
+			printSample(Math.max(testTimeNs, 1));
+		}
+		else
+		{
+			str().print("\n").print("MERGED RESULTS of " + snapshots.size() + " workers").flush();
+			printStats(Math.max((int) Math.round(testTimeNs / NANOS_PER_SECOND), 1));
+			if (printHistogram)
+			{
+				printHistogram();
+			}
+		}
+		return new ThroughputResult(snapshots.stream().mapToInt(w -> w.threads).sum(), 0, testTimeNs, requestCount.longValue(),
+				errorCount.longValue(), totalRequestTimeNs.longValue(), maxRequestTimeNs.get(), merged.getHistogram());
+	}
+
+	private HistogramLogWriter openIntervalLog(final File file)
+	{
+		try
+		{
+			return file == null ? null : new HistogramLogWriter(file, true);
+		}
+		catch (final IOException e)
+		{
+			printer.accept("Cannot open interval log " + file, e);
+			return null;
+		}
+	}
+
+	/**
+	 * @return the log, or <code>null</code> if writing failed and the log was closed.
+	 */
+	private HistogramLogWriter appendInterval(final HistogramLogWriter log, final long startMillis, final long endMillis,
+			final AdaptiveHistogram interval)
+	{
+		if (log == null)
+		{
+			return null;
+		}
+		try
+		{
+			log.append(startMillis, endMillis, interval);
+			return log;
+		}
+		catch (final IOException e)
+		{
+			printer.accept("Cannot write interval log, logging stopped", e);
+			closeIntervalLog(log);
+			return null;
+		}
+	}
+
+	private void closeIntervalLog(final HistogramLogWriter log)
+	{
+		try
+		{
+			if (log != null)
+			{
+				log.close();
+			}
+		}
+		catch (final IOException e)
+		{
+			printer.accept("Cannot close interval log", e);
+		}
+	}
+
+	/**
+	 * Prints the requests, request latency and CPU time of every client, the fairness index of their request counts, and warns
+	 * when clients are starved or the runner itself is CPU-bound.
+	 */
+	private void printWorkers(final List<WorkerStats> clients)
+	{
+		final long total = clients.stream().mapToLong(WorkerStats::requests).sum();
+		final double fairness = WorkerStats.fairness(clients);
+		final Printer print = str().print("WORKERS " + clients.size()). //
+				print("  worker   requests     errors    share    lat p50 " + unitSymbol() + "    lat p99 " + unitSymbol()
+						+ "    lat max " + unitSymbol() + "   cpu " + unitSymbol() + "    cpu");
+		final List<String> warnings = new ArrayList<>();
+		double cpuShares = 0;
+		for (int i = 0; i < clients.size(); ++i)
+		{
+			final WorkerStats w = clients.get(i);
+			final float[] latency = w.latency.getHistogram().getValuesForPercentiles(50, 99, 100);
+			final double cpu = w.cpuShare();
+			cpuShares += Math.max(cpu, 0);
+			print.print(String.format("  %6d  %9d  %9d  %6.1f%%  %11.3f  %11.3f  %11.3f  %8s  %5s", i + 1, w.requests(),
+					w.errors(), total == 0 ? 0 : 100. * w.requests() / total, latency[0] * unitScale(),
+					latency[1] * unitScale(), latency[2] * unitScale(), w.cpuNs() < 0 ? "n/a" : String.format("%.1f", w.cpuNs() * unitScale()),
+					cpu < 0 ? "n/a" : percent(cpu)));
+			if (cpu >= CPU_BOUND_SHARE)
+			{
+				warnings.add("WARNING worker " + (i + 1) + " was running on a CPU " + percent(cpu)
+						+ " of the time, the load generator is CPU-bound and the results cannot be trusted");
+			}
+		}
+		final int processors = Runtime.getRuntime().availableProcessors();
+		if (cpuShares >= CPU_BOUND_SHARE * processors)
+		{
+			warnings.add("WARNING workers used " + percent(cpuShares / processors) + " of " + processors
+					+ " CPUs, the load generator is CPU-bound and the results cannot be trusted");
+		}
+		print.print(String.format("  fairness index : %.3f (1 = every worker completed the same number of requests)",
+				fairness));
+		if (fairness < FAIRNESS_WARNING)
+		{
+			warnings.add("WARNING workers are not served fairly, some are starved");
+		}
+		warnings.forEach(print::print);
+		print.print("").flush();
+	}
+
+	private void printOverhead(final ThroughputResult floor, final ThroughputResult result)
+	{
+		final float[] floors = floor.getHistogram().getValuesForPercentiles(OVERHEAD_PERCENTILES);
+		final float[] measured = result.getHistogram().getValuesForPercentiles(OVERHEAD_PERCENTILES);
+		final double rateShare = result.getRequestRate() / floor.getRequestRate();
+
+		final Printer print = str().print("\n").print("RUNNER OVERHEAD (no-op action, " + floor.getThreads() + " threads)"). //
+				print(" - max request rate : " + floor.getRequestRate() + " r/s, measured " + result.getRequestRate() + " r/s ("
+						+ percent(rateShare) + ")");
+		final List<String> warnings = new ArrayList<>();
+		for (int i = 0; i < OVERHEAD_PERCENTILES.length; ++i)
+		{
+			final double share = measured[i] > 0 ? floors[i] / measured[i] : 1;
+			print.print(String.format(" - %6s floor : %s, measured %s (%s)", OVERHEAD_LABELS[i], time(floors[i]),
+					time(measured[i]), percent(share)));
+			if (share >= OVERHEAD_WARNING_SHARE)
 			{
-				XYHistogramChart.display(histogram, "Request time (ms)");
+				warnings.add("WARNING " + OVERHEAD_LABELS[i] + " is within " + Math.round(1 / OVERHEAD_WARNING_SHARE)
+						+ "x of the runner's own floor, the runner is a large part of it");
 			}
 		}
+		if (rateShare >= RATE_WARNING_SHARE)
+		{
+			warnings.add("WARNING request rate is " + percent(rateShare)
+					+ " of the runner's maximum, the runner may be limiting the load");
+		}
+		warnings.forEach(print::print);
+		print.print("\n").flush();
+	}
+
+	private static String percent(final double share)
+	{
+		return String.format("%.1f%%", 100 * share);
+	}
+
+	/**
+	 * Prints the measured stages in order of concurrency, the throughput and latency curve, and the chosen stage.
+	 */
+	private void printAutoTune(final AutoTune tune, final List<ThroughputResult> stages)
+	{
+		final String target = "p" + (tune.getPercentile() == Math.rint(tune.getPercentile()) ? String.valueOf(
+				(long) tune.getPercentile()) : String.valueOf(tune.getPercentile()));
+		final Printer print = str().print("\n").print("AUTO-TUNE " + stages.size() + " stages, target " + target + " <= "
+				+ time(tune.getLimitNs())). //
+				print("  stage  threads  target r/s  request r/s  error r/s  " + String.format("%8s", target + " "
+						+ unitSymbol()) + "  meets");
+		final List<Integer> order = IntStream.range(0, stages.size()).boxed().sorted(Comparator.comparingInt(
+				(Integer i) -> stages.get(i).getThreads()).thenComparingDouble(i -> stages.get(i).getTargetRate())).collect(
+				Collectors.toList());
+		for (final int i : order)
+		{
+			final ThroughputResult s = stages.get(i);
+			print.print(String.format("  %5d  %7d  %10.1f  %11.1f  %9.1f  %8.3f  %5s", i + 1, s.getThreads(), s.getTargetRate(),
+					s.getRequestRate(), s.getErrorRate(), s.getValueForPercentile(tune.getPercentile()) * unitScale(),
+					tune.meets(s) ? "yes" : "no"));
+		}
+
+		final int best = tune.bestStage(stages);
+		if (best < 0)
+		{
+			print.print("  chosen        : none, no stage meets the target");
+		}
+		else
+		{
+			final ThroughputResult s = stages.get(best);
+			print.print("  chosen        : " + (tune.isRate() ? "rate " + s.getTargetRate() + " r/s" : "threads " + s
+					.getThreads()) + ", " + s.getRequestRate() + " r/s at " + target + " " + time(s.getValueForPercentile(
+					tune.getPercentile())) + " (stage " + (best + 1) + ")");
+		}
+		print.print("\n").flush();
+	}
+
+	private void printProfile(final LoadProfile profile, final List<ThroughputResult> stages)
+	{
+		final Printer print = str().print("\n").print("LOAD PROFILE " + stages.size() + " stages"). //
+				print("  stage  threads  target r/s  request r/s  error r/s  p50 " + unitSymbol() + "  p99 " + unitSymbol());
+		for (int i = 0; i < stages.size(); ++i)
+		{
+			final ThroughputResult s = stages.get(i);
+			print.print(String.format("  %5d  %7d  %10.1f  %11.1f  %9.1f  %6.3f  %6.3f", i + 1, s.getThreads(), s.getTargetRate(),
+					s.getRequestRate(), s.getErrorRate(), s.getValueForPercentile(50) * unitScale(),
+					s.getValueForPercentile(99) * unitScale()));
+		}
+
+		final int saturation = profile.saturationStage(stages);
+		if (saturation < 0)
+		{
+			print.print("  saturation    : not reached");
+		}
+		else
+		{
+			final ThroughputResult s = stages.get(saturation);
+			print.print("  saturation    : stage " + (saturation + 1) + ", " + s.getRequestRate() + " r/s at p99 " + time(
+					s.getValueForPercentile(99)));
+		}
+
+		if (profile.getP99TargetNs() > 0)
+		{
+			final int sustainable = profile.maxSustainableStage(stages);
+			print.print("  max sustainable at p99 <= " + time(profile.getP99TargetNs()) + " : " + (sustainable < 0 ? "none"
+					: stages.get(sustainable).getRequestRate() + " r/s (stage " + (sustainable + 1) + ")"));
+		}
+		print.print("\n").flush();
 	}
 
 	private class Printer
@@ -404,14 +1520,139 @@ public class ThroughputRunner
 		return new Printer();
 	}
 
-	private void registerExecution(final long start, final AtomicLong maxRequestTimeMs, final LongAdder totalRequestTimeMs,
-			final LongAdder requestCount, final AdaptiveHistogram histogram)
+	/**
+	 * Runs the warm-up phase, then prints its summary and resets counters and histograms for the measured phase.
+	 * The clients are paused for the cut-over until the outstanding requests complete, so no request is counted in one
+	 * phase and recorded in the other. Requests scheduled before the cut-over, and not started yet, are skipped.
+	 * @return the start of the measured phase.
+	 */
+	private long warmUp(final Builder config, final List<WorkerStats> clients) throws InterruptedException
+	{
+		if (config.warmUpSeconds <= 0)
+		{
+			return System.nanoTime();
+		}
+
+		final long start = System.nanoTime();
+		final long end = start + TimeUnit.SECONDS.toNanos(config.warmUpSeconds);
+		final double[] rates = new double[WARM_UP_STEADY_INTERVALS];
+		int intervals = 0;
+		boolean steady = false;
+		long lastCount = 0;
+		long lastTime = start;
+		do
+		{
+			Thread.sleep(TimeUnit.SECONDS.toMillis(config.logSleepSeconds));
+			final long now = System.nanoTime();
+			final long count = requestCount.longValue();
+			rates[intervals++ % rates.length] = (count - lastCount) * NANOS_PER_SECOND / (now - lastTime);
+			lastCount = count;
+			lastTime = now;
+
+			str().print(""). //
+					print("Warm-up sample :"). //
+					print(" - request rate  : " + rates[(intervals - 1) % rates.length] + " r/s\n"). //
+					flush();
+
+			steady = config.autoWarmUp && intervals >= rates.length && variation(rates) < WARM_UP_MAX_VARIATION;
+		} while (!steady && test.get() && System.nanoTime() < end);
+
+		if (!limiter.pause(TimeUnit.SECONDS.toNanos(DRAIN_TIMEOUT_SECONDS)))
+		{
+			str().print("WARNING requests of the warm-up still outstanding after " + DRAIN_TIMEOUT_SECONDS
+					+ " s, they may be counted in the results").flush();
+		}
+		final long warmUpNs = System.nanoTime() - start;
+		final float warmUpP99 = histogram.getHistogram().getValueForPercentile(99);
+		histogram.reset();
+		if (serviceHistogram != null)
+		{
+			serviceHistogram.reset();
+		}
+
+		final long requests = requestCount.sumThenReset();
+		final long errorsCount = errorCount.sumThenReset();
+		final long totalRequestTime = totalRequestTimeNs.sumThenReset();
+		final long max = maxRequestTimeNs.getAndSet(0);
+		loopCount.reset();
+		totalLoopTimeNs.reset();
+		totalServiceTimeNs.reset();
+		errors = new ErrorBuckets(config.maxErrorBuckets);
+		if (scenario != null)
+		{
+			scenario = scenario.reset();
+		}
+		if (emissions != null)
+		{
+			emissions = new Emissions();
+		}
+		clients.forEach(WorkerStats::reset);
+		final long measured = System.nanoTime();
+		measureStart = measured;
+		limiter.resume();
+
+		str().print(""). //
+				print("WARM-UP (excluded from results) " + time(warmUpNs) + (steady ? ", steady state reached" : "")). //
+				print("  requests      : " + requests + ", errors: " + errorsCount). //
+				print("  request rate  : " + (requests * NANOS_PER_SECOND / warmUpNs) + " r/s"). //
+				print("  max exec time : " + time(max)). //
+				print("  avg exec time : " + time(requests == 0 ? 0 : (double) totalRequestTime / requests)). //
+				print("  99% exec time : " + time(warmUpP99) + "\n"). //
+				flush();
+		return measured;
+	}
+
+	/**
+	 * @return coefficient of variation (standard deviation to mean ratio) of the given values.
+	 */
+	private static double variation(final double[] values)
+	{
+		final double mean = Arrays.stream(values).average().orElse(0);
+		if (mean <= 0)
+		{
+			return Double.MAX_VALUE;
+		}
+		final double variance = Arrays.stream(values).map(v -> (v - mean) * (v - mean)).sum() / values.length;
+		return Math.sqrt(variance) / mean;
+	}
+
+	/**
+	 * Parks the calling thread until the intended start time of the given request on the open-loop timeline.
+	 */
+	private long awaitIntendedStart(final long scheduleStart, final long request)
+	{
+		final long intended = scheduleStart + (long) (request * NANOS_PER_SECOND / rate);
+		long delay;
+		while ((delay = intended - System.nanoTime()) > 0 && test.get())
+		{
+			LockSupport.parkNanos(delay);
+		}
+		return intended;
+	}
+
+	/**
+	 * @return the request time from the intended start.
+	 */
+	long registerExecution(final long intended, final long start, final Scenario.Action action)
 	{
-		final long time = System.currentTimeMillis() - start;
-		max(maxRequestTimeMs, time);
-		totalRequestTimeMs.add(time);
+		final long end = System.nanoTime();
+		final long time = end - intended;
+		max(maxRequestTimeNs, time);
+		totalRequestTimeNs.add(time);
 		requestCount.increment();
-		histogram.addValue(time);
+		histogram.recordValue(time);
+		if (action != null)
+		{
+			action.register(time);
+		}
+
+		final HistogramRecorder service = serviceHistogram;
+		if (service != null)
+		{
+			totalServiceTimeNs.add(end - start);
+			service.recordValue(end - start);
+		}
+		return time;
 	}
 
 	protected void print(final String text, final Throwable t)
@@ -419,36 +1660,64 @@ public class ThroughputRunner
 		printer.accept(text, t);
 	}
 
-	private void increment(final ConcurrentHashMap<String, LongAdder> errorsHistogram, final String key)
+	private double unitScale()
 	{
-		LongAdder adder = errorsHistogram.get(key);
-		if (adder == null)
+		return 1. / reportUnit.toNanos(1);
+	}
+
+	private String unitSymbol()
+	{
+		return unitSymbol(reportUnit);
+	}
+
+	static String unitSymbol(final TimeUnit unit)
+	{
+		switch (unit)
 		{
-			final LongAdder tmp = new LongAdder();
-			adder = errorsHistogram.putIfAbsent(key, tmp);
-			if (adder == null)
-			{
-				adder = tmp;
-			}
+			case NANOSECONDS:
+				return "ns";
+			case MICROSECONDS:
+				return "us";
+			case MILLISECONDS:
+				return "ms";
+			case SECONDS:
+				return "s";
+			default:
+				return unit.name().toLowerCase();
 		}
-		adder.increment();
 	}
 
-	private void max(final AtomicLong maxRequestTimeMs, long sample)
+	private String time(final double nanos)
+	{
+		return (nanos * unitScale()) + " " + unitSymbol();
+	}
+
+	static void max(final AtomicLong maxRequestTimeNs, long sample)
 	{
-		while (sample > maxRequestTimeMs.get())
+		while (sample > maxRequestTimeNs.get())
 		{
-			sample = maxRequestTimeMs.getAndSet(sample);
+			sample = maxRequestTimeNs.getAndSet(sample);
 		}
 	}
 
 	protected String printErrors()
 	{
+		final ErrorBuckets buckets = errors;
 		final Printer p = str().print("\n"). //
-				print("ERRORS " + errors.size() + " of " + errorCount.longValue());
+				print("ERRORS " + buckets.size() + " buckets of " + errorCount.longValue());
 
-		errors.entrySet().stream().forEach(e -> p.print(errorsHistogram.get(e.getKey()).longValue() + " times : " + e.getKey(),
-				e.getValue()));
+		for (final ErrorBuckets.ErrorClass errorClass : buckets.classes())
+		{
+			final float[] latency = errorClass.latency.getHistogram().getValuesForPercentiles(50, 99);
+			p.print(errorClass.count.longValue() + " times : " + errorClass.name() + ", p50 " + time(latency[0]) + ", p99 "
+					+ time(latency[1]));
+			for (final ErrorBuckets.Bucket bucket : errorClass.buckets())
+			{
+				final StackTraceElement[] stack = bucket.first.getStackTrace();
+				p.print("  " + bucket.count.longValue() + " times at " + (stack.length == 0 ? "unknown" : stack[0]) + " : "
+						+ bucket.first.getMessage(), bucket.first);
+			}
+		}
 
 		final String txt = p.toString();
 		p.flush();
@@ -458,21 +1727,63 @@ public class ThroughputRunner
 
 	protected String printStats(final int testTimeInSeconds)
 	{
-		final double avgExecTimeMs = totalRequestTimeMs.doubleValue() / requestCount.doubleValue();
+		final double avgExecTimeNs = totalRequestTimeNs.doubleValue() / requestCount.doubleValue();
+		final String unit = unitSymbol().toUpperCase();
 		final Printer print = str();
 
 		print.print("\n"). //
 				print("REQUESTS: " + requestCount.longValue() + ", ERRORS: " + errorCount
-				.longValue() + ", TOTAL_EXEC_TIME_MS: " + totalRequestTimeMs
-				.longValue() + ", TOTAL_LOOP_TIME_MS: " + totalLoopTimeMs.longValue() + ", LOOPS: " + loopCount.longValue()). //
+				.longValue() + ", TOTAL_EXEC_TIME_" + unit + ": " + reportUnit.convert(totalRequestTimeNs.longValue(),
+				TimeUnit.NANOSECONDS) + ", TOTAL_LOOP_TIME_" + unit + ": " + reportUnit.convert(totalLoopTimeNs.longValue(),
+				TimeUnit.NANOSECONDS) + ", LOOPS: " + loopCount.longValue()). //
 				print("  request rate  : " + (requestCount.doubleValue() / testTimeInSeconds) + " r/s"). //
 				print("  error rate    : " + (errorCount.doubleValue() / testTimeInSeconds) + " e/s"). //
-				print("  max exec time : " + maxRequestTimeMs.get() + " ms"). //
-				print("  avg exec time : " + avgExecTimeMs + " ms"). //
-				print("  avg loop time : " + (totalLoopTimeMs.doubleValue() / (requestCount.doubleValue() + errorCount
-				.doubleValue())) + " ms"). //
-				print("  thread rate   : " + (1000. / avgExecTimeMs) + " r/s"). //
-				print("  effective req : " + (testTimeInSeconds * 1000. / requestCount.doubleValue()) + " ms\n");
+				print("  max exec time : " + time(maxRequestTimeNs.get())). //
+				print("  avg exec time : " + time(avgExecTimeNs)). //
+				print("  avg loop time : " + time(totalLoopTimeNs.doubleValue() / (requestCount.doubleValue() + errorCount
+				.doubleValue()))). //
+				print("  thread rate   : " + (NANOS_PER_SECOND / avgExecTimeNs) + " r/s"). //
+				print("  effective req : " + time(testTimeInSeconds * NANOS_PER_SECOND / requestCount.doubleValue()));
+
+		final JvmStats first = jvmStart;
+		final JvmStats last = jvmEnd;
+		if (first != null && last != null)
+		{
+			final long allocated = last.allocatedBytes(first);
+			print.print(String.format("  gc time       : %d ms in %d collections, %.2f%% of the run", last.gcTimeMs - first.gcTimeMs,
+					last.gcCount - first.gcCount, 100 * last.gcShare(first))). //
+					print("  allocation    : " + (allocated < 0 ? "n/a" : String.format("%.0f bytes/request, %.1f MB/s",
+							allocated / Math.max(requestCount.doubleValue(), 1),
+							allocated / MB / ((last.nanoTime - first.nanoTime) / NANOS_PER_SECOND))));
+		}
+		print.print("");
+
+		if (rate > 0)
+		{
+			print.print("  target rate   : " + rate + " r/s"). //
+					print("  avg service   : " + time(totalServiceTimeNs.doubleValue() / requestCount.doubleValue()) + "\n");
+		}
+
+		final Emissions items = emissions;
+		if (items != null)
+		{
+			print.print("  item rate     : " + (items.items.doubleValue() / testTimeInSeconds) + " items/s"). //
+					print("  avg items     : " + (items.items.doubleValue() / requestCount.doubleValue()) + " per request\n");
+		}
+
+		final Scenario mix = scenario;
+		if (mix != null)
+		{
+			print.print("  action                  weight   requests     errors   request r/s   avg exec " + unitSymbol());
+			for (final Scenario.Action a : mix.actions())
+			{
+				print.print(String.format("  %-20s  %7.1f%%  %9d  %9d  %12.1f  %11.3f", a.name, 100 * mix.share(a),
+						a.requestCount.longValue(), a.errorCount.longValue(), a.requestCount.doubleValue() / testTimeInSeconds,
+						a.requestCount.longValue() == 0 ? 0
+								: a.totalRequestTimeNs.doubleValue() / a.requestCount.longValue() * unitScale()));
+			}
+			print.print("");
+		}
 
 		final String out = print.toString();
 		print.flush();
@@ -482,23 +1793,39 @@ public class ThroughputRunner
 
 	protected String printHistogram()
 	{
-		final AdaptiveHistogram h = histogram;
+		final HistogramRecorder recorder = histogram;
+		final HistogramRecorder service = serviceHistogram;
 		final Printer print = str();
 
-		if (h != null)
+		if (recorder != null)
+		{
+			printPercentiles(print, service == null ? "action execution time" : "response time from intended start",
+					recorder.getHistogram());
+			synchronized (recorder)
+			{
+				final AdaptiveHistogram interval = recorder.getLastInterval();
+				if (interval != null)
+				{
+					printPercentiles(print, "last interval", interval);
+				}
+			}
+		}
+		if (service != null)
+		{
+			printPercentiles(print, "service time from actual start", service.getHistogram());
+		}
+		final Scenario mix = scenario;
+		if (mix != null)
 		{
-			print.print("\n"). //
-					print("Main percentiles (action execution time):"). //
-					print("   5%: " + h.getValueForPercentile(5) + " ms"). //
-					print("  25%: " + h.getValueForPercentile(25) + " ms"). //
-					print("  50%: " + h.getValueForPercentile(50) + " ms"). //
-					print("  75%: " + h.getValueForPercentile(75) + " ms"). //
-					print("  80%: " + h.getValueForPercentile(80) + " ms"). //
-					print("  85%: " + h.getValueForPercentile(85) + " ms"). //
-					print("  90%: " + h.getValueForPercentile(90) + " ms"). //
-					print("  95%: " + h.getValueForPercentile(95) + " ms"). //
-					print("  99%: " + h.getValueForPercentile(99) + " ms"). //
-					print("\n");
+			mix.actions().forEach(a -> printPercentiles(print, "action " + a.name, a.histogram.getHistogram()));
+		}
+		final Emissions items = emissions;
+		if (items != null)
+		{
+			printPercentiles(print, "time to first item from intended start", items.firstItem.getHistogram());
+			printPercentiles(print, "gap between items", items.gaps.getHistogram());
+			printPercentiles(print, "items per request", items.itemsPerRequest.getHistogram(), v -> String.valueOf(
+					Math.round(v)));
 		}
 
 		final String out = print.toString();
@@ -507,4 +1834,21 @@ public class ThroughputRunner
 
 		return out;
 	}
-}
+
+	private void printPercentiles(final Printer print, final String title, final AdaptiveHistogram h)
+	{
+		printPercentiles(print, title, h, this::time);
+	}
+
+	private void printPercentiles(final Printer print, final String title, final AdaptiveHistogram h,
+			final DoubleFunction<String> format)
+	{
+		final float[] values = h.getValuesForPercentiles(REPORT_PERCENTILES);
+		print.print("\n").print("Main percentiles (" + title + "):");
+		for (int i = 0; i < REPORT_PERCENTILES.length; ++i)
+		{
+			print.print(String.format("%6s: ", REPORT_LABELS[i]) + format.apply(values[i]));
+		}
+		print.print("\n");
+	}
+}
\ No newline at end of file
@@ -0,0 +1,110 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.troughput;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+import org.marekasf.troughput.histogram.AdaptiveHistogram;
+
+/**
+ * Cumulative counters and histogram of a worker process, streamed to the {@link Coordinator}.
+ * Every snapshot replaces the previous one of the same worker, so a lost or late snapshot does not skew the totals.
+ */
+class WorkerSnapshot
+{
+	static final int MAGIC = 0x54525750; // "TRWP"
+	static final int VERSION = 1;
+
+	final boolean last;
+	final int threads;
+	final long testTimeNs;
+	final long requestCount;
+	final long errorCount;
+	final long loopCount;
+	final long totalRequestTimeNs;
+	final long totalLoopTimeNs;
+	final long maxRequestTimeNs;
+	final byte[] histogram;
+
+	WorkerSnapshot(final boolean last, final int threads, final long testTimeNs, final long requestCount,
+			final long errorCount, final long loopCount, final long totalRequestTimeNs, final long totalLoopTimeNs,
+			final long maxRequestTimeNs, final byte[] histogram)
+	{
+		this.last = last;
+		this.threads = threads;
+		this.testTimeNs = testTimeNs;
+		this.requestCount = requestCount;
+		this.errorCount = errorCount;
+		this.loopCount = loopCount;
+		this.totalRequestTimeNs = totalRequestTimeNs;
+		this.totalLoopTimeNs = totalLoopTimeNs;
+		this.maxRequestTimeNs = maxRequestTimeNs;
+		this.histogram = histogram;
+	}
+
+	AdaptiveHistogram decodeHistogram()
+	{
+		return AdaptiveHistogram.decode(histogram);
+	}
+
+	void write(final DataOutputStream out) throws IOException
+	{
+		out.writeBoolean(last);
+		out.writeInt(threads);
+		out.writeLong(testTimeNs);
+		out.writeLong(requestCount);
+		out.writeLong(errorCount);
+		out.writeLong(loopCount);
+		out.writeLong(totalRequestTimeNs);
+		out.writeLong(totalLoopTimeNs);
+		out.writeLong(maxRequestTimeNs);
+		out.writeInt(histogram.length);
+		out.write(histogram);
+		out.flush();
+	}
+
+	/**
+	 * @return the next snapshot, <code>null</code> if the worker closed the connection.
+	 */
+	static WorkerSnapshot read(final DataInputStream in) throws IOException
+	{
+		final int last = in.read();
+		if (last < 0)
+		{
+			return null;
+		}
+		try
+		{
+			final int threads = in.readInt();
+			final long testTimeNs = in.readLong();
+			final long requestCount = in.readLong();
+			final long errorCount = in.readLong();
+			final long loopCount = in.readLong();
+			final long totalRequestTimeNs = in.readLong();
+			final long totalLoopTimeNs = in.readLong();
+			final long maxRequestTimeNs = in.readLong();
+			final byte[] histogram = new byte[in.readInt()];
+			in.readFully(histogram);
+			return new WorkerSnapshot(last != 0, threads, testTimeNs, requestCount, errorCount, loopCount, totalRequestTimeNs,
+					totalLoopTimeNs, maxRequestTimeNs, histogram);
+		}
+		catch (final EOFException e)
+		{
+			throw new IOException("Worker closed the connection in the middle of a snapshot", e);
+		}
+	}
+}
@@ -0,0 +1,170 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.troughput;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.marekasf.troughput.histogram.HistogramRecorder;
+
+/**
+ * Counters, request latency histogram and CPU time of a single client. The client's requests, errors and their
+ * latencies are recorded when the requests complete, by the <code>observeOn</code> callbacks, so in <code>stress</code>
+ * mode they describe the requests and not the subscriptions. The histogram is the client's own, not shared with other
+ * clients. The runner reads them and takes the CPU time of the client's thread at the start and the end of
+ * measurement.
+ */
+class WorkerStats
+{
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	final HistogramRecorder latency = new HistogramRecorder();
+	private final LongAdder completions = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private volatile long threadId = -1;
+
+	// taken by the runner
+	private long completionsStart;
+	private long failuresStart;
+	private long cpuStartNs;
+	private long wallStartNs;
+	private long requests;
+	private long failed;
+	private long cpuNs = -1;
+	private long wallNs;
+
+	/**
+	 * Called by the client thread before its first request.
+	 */
+	void started()
+	{
+		threadId = Thread.currentThread().getId();
+	}
+
+	/**
+	 * Called when a request of the client completes, successfully or not.
+	 * @param latencyNs the request time, as registered for the whole run.
+	 */
+	void completed(final long latencyNs)
+	{
+		completions.increment();
+		latency.recordValue(latencyNs);
+	}
+
+	/**
+	 * Called when a request of the client fails, before or after its subscription.
+	 */
+	void failed()
+	{
+		failures.increment();
+	}
+
+	/**
+	 * Merges the latencies recorded so far, so they do not pile up in the recorder until the report.
+	 */
+	void flush()
+	{
+		latency.flush();
+	}
+
+	/**
+	 * Leaves the warm-up out of the counts and latencies, while no request is outstanding.
+	 */
+	void reset()
+	{
+		latency.reset();
+		completionsStart = completions.sum();
+		failuresStart = failures.sum();
+	}
+
+	/**
+	 * Starts measurement, after the warm-up.
+	 */
+	void start()
+	{
+		// a client that has not started yet has used no CPU
+		cpuStartNs = threadId < 0 ? 0 : cpu(threadId);
+		wallStartNs = System.nanoTime();
+	}
+
+	/**
+	 * Ends measurement, while the client thread is still alive.
+	 */
+	void end()
+	{
+		requests = completions.sum() - completionsStart;
+		failed = failures.sum() - failuresStart;
+		final long cpu = threadId < 0 ? -1 : cpu(threadId);
+		cpuNs = cpu < 0 || cpuStartNs < 0 ? -1 : cpu - cpuStartNs;
+		wallNs = System.nanoTime() - wallStartNs;
+	}
+
+	long requests()
+	{
+		return requests;
+	}
+
+	long errors()
+	{
+		return failed;
+	}
+
+	/**
+	 * @return CPU time of the client thread during measurement, <code>-1</code> if the JVM cannot measure it, e.g. for
+	 * virtual threads.
+	 */
+	long cpuNs()
+	{
+		return cpuNs;
+	}
+
+	/**
+	 * @return share of the measured time the client thread was running on a CPU, <code>-1</code> if unknown.
+	 */
+	double cpuShare()
+	{
+		return cpuNs < 0 || wallNs <= 0 ? -1 : (double) cpuNs / wallNs;
+	}
+
+	/**
+	 * Jain's fairness index of the request counts: <code>1</code> if all clients completed the same number of requests,
+	 * <code>1/n</code> if a single one completed all of them.
+	 */
+	static double fairness(final List<WorkerStats> workers)
+	{
+		double sum = 0;
+		double squares = 0;
+		for (final WorkerStats w : workers)
+		{
+			sum += w.requests;
+			squares += (double) w.requests * w.requests;
+		}
+		return squares == 0 ? 1 : sum * sum / (workers.size() * squares);
+	}
+
+	private static long cpu(final long threadId)
+	{
+		try
+		{
+			return THREADS.isThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled() ? THREADS.getThreadCpuTime(threadId)
+					: -1;
+		}
+		catch (final UnsupportedOperationException e)
+		{
+			return -1;
+		}
+	}
+}
@@ -33,9 +33,14 @@ public class XYHistogramChart extends ApplicationFrame
 	private static final long serialVersionUID = 1052668809088392899L;
 
 	public static void display(final AdaptiveHistogram h, final String title)
+	{
+		display(h, title, 1);
+	}
+
+	public static void display(final AdaptiveHistogram h, final String title, final double scale)
 	{
 
-		final XYHistogramChart demo = new XYHistogramChart(h, title);
+		final XYHistogramChart demo = new XYHistogramChart(h, title, scale);
 		demo.pack();
 		RefineryUtilities.centerFrameOnScreen(demo);
 		demo.setVisible(true);
@@ -59,12 +64,18 @@ public class XYHistogramChart extends ApplicationFrame
 	}
 
 	public XYHistogramChart(final AdaptiveHistogram h, final String title)
+	{
+		this(h, title, 1);
+	}
+
+	public XYHistogramChart(final AdaptiveHistogram h, final String title, final double scale)
 	{
 
 		super(title);
 		final XYSeries series = new XYSeries(title);
 
-		IntStream.rangeClosed(0, 100).forEach(i -> series.add(i, h.getValueForPercentile(i)));
+		final float[] values = h.getValuesForPercentiles(IntStream.rangeClosed(0, 100).asDoubleStream().toArray());
+		IntStream.rangeClosed(0, 100).forEach(i -> series.add(i, values[i] * scale));
 
 		final XYSeriesCollection data = new XYSeriesCollection(series);
 		final JFreeChart chart = ChartFactory.createXYLineChart("XY Histogram Chart " + title, "X", "Y", data,
@@ -15,56 +15,206 @@ limitations under the License.
 */
 package org.marekasf.troughput.histogram;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * This class implements a histogram that adapts to an unknown data distribution.
- * It keeps a more or less constant resolution throughout the data range by increasing 
+ * It keeps a more or less constant resolution throughout the data range by increasing
  * the resolution where the data is more dense.  For example, if the data has such
- * such a distribution that most of the values lie in the 0-5 range and only a few are 
+ * such a distribution that most of the values lie in the 0-5 range and only a few are
  * in the 5-10 range, the histogram would adapt and assign more counting buckets to
  * the 0-5 range and less to the 5-10 range.
- * This implementation provides a method to obtain the accumulative density function 
- * for a given data point, and a method to obtain the data point that splits the 
- * data set at a given percentile. 
+ * This implementation provides a method to obtain the accumulative density function
+ * for a given data point, and a method to obtain the data point that splits the
+ * data set at a given percentile.
+ * <p>
+ * The tree is stored in primitive arrays indexed by node number instead of node objects.
+ * A node is either a fork node, which splits the data range in two at a split value, or a data node,
+ * which counts the data points in a range. A data node that exceeds its limit is turned into a fork node in place
+ * and two new data nodes are appended. Data nodes are also linked in ascending value order, so percentile
+ * queries walk the buckets without recursion. Adding values and querying percentiles does not allocate,
+ * except when the arrays grow.
  * @author Jorge Handl
  */
 public class AdaptiveHistogram implements Serializable {
 
     private static final long serialVersionUID = -1L;
-	private long totalCount;     // total number of data points
-    private HistogramNode root;  // root of the tree
+    private static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MAX_MERGED_BUCKETS = 1024;
+    private static final int PENDING = -2;             // left subtree of a fork node not decoded yet
+    private static final byte ENCODING_VERSION = 1;
+    private static final byte COMPRESSED = 1;
+
+    private long totalCount;     // total number of data points
+    private int root;            // root node of the tree
+    private int first;           // data node with the lowest values
+    private int size;            // number of nodes in use
+
+    // Attributes of a fork node.
+    private int[] left;          // left subtree, NONE for a data node
+    private int[] right;         // right subtree
+    private float[] splitValue;
+
+    // Attributes of a data node.
+    private long[] count;
+    private float[] minValue;
+    private float[] maxValue;
+    private int[] next;          // next data node in value order
+    private int[] previous;      // previous data node in value order
+
+    private int[] stack = new int[INITIAL_CAPACITY];  // traversal stack of getAccumCount
 
     /**
      * Class constructor.
      */
     public AdaptiveHistogram() {
-        root = null;
+        left = new int[INITIAL_CAPACITY];
+        right = new int[INITIAL_CAPACITY];
+        splitValue = new float[INITIAL_CAPACITY];
+        count = new long[INITIAL_CAPACITY];
+        minValue = new float[INITIAL_CAPACITY];
+        maxValue = new float[INITIAL_CAPACITY];
+        next = new int[INITIAL_CAPACITY];
+        previous = new int[INITIAL_CAPACITY];
         reset();
     }
 
     /**
      * Erases all data from the histogram.
      */
-    public void reset() {
-        if (null != root) {
-            root.reset();
-            root = null;
-        }
+    public synchronized void reset() {
+        root = NONE;
+        first = NONE;
+        size = 0;
         totalCount = 0;
     }
 
     /**
-     * Adds a data point to the histogram.
+     * Adds a data point to the histogram.<p>
+     * The tree is descended to the data node for the value.
+     * If the value falls inside of the nodes' range and the count does not exceed the imposed limit, it simply increments the count.<br>
+     * If the value falls outside of the nodes' range, it expands the range.<br>
+     * If the count exceeds the limit, it splits in two assuming uniform distribution inside the node.<br>
+     * If the value falls outside of the nodes' range AND the count exceeds the limit, it creates a new node for that value.
      * @param value the data point to add.
      */
     public synchronized void addValue(float value) {
         totalCount++;
-        if (null == root) {
-            root = new HistogramDataNode();
+        if (NONE == root) {
+            root = newDataNode(0, Float.MAX_VALUE, -Float.MAX_VALUE);
+            first = root;
+            next[root] = NONE;
+            previous[root] = NONE;
+        }
+        int node = root;
+        while (NONE != left[node]) {
+            node = (value > splitValue[node]) ? right[node] : left[node];
+        }
+
+        final long limit = getCountPerNodeLimit();
+        final float min = minValue[node];
+        final float max = maxValue[node];
+        if (value >= min && value <= max) {  // the value falls within this nodes' range
+            if (count[node] < limit  // there is enough room in this node for the new value
+                    || min == max) {  // or the node defines a zero-width range so it can't be split
+                count[node]++;
+            } else {  // not enough room, distribute the value count among the new nodes, assuming uniform distribution
+                float split = (min + max) / 2;
+                long rightCount = count[node] / 2;
+                long leftCount = rightCount;
+                boolean countWasOdd = (leftCount + rightCount < count[node]);
+                // assign the new value to the corresponding side. If the count is odd, add the extra item to the other side to keep balance
+                if (value > split) {
+                    rightCount++;
+                    leftCount += (countWasOdd?1:0);
+                } else {
+                    leftCount++;
+                    rightCount += (countWasOdd?1:0);
+                }
+                // turn this node into a fork node over two new data nodes
+                int leftNode = newDataNode(leftCount, min, split);
+                int rightNode = newDataNode(rightCount, split, max);
+                fork(node, split, leftNode, rightNode);
+            }
+        } else {  // the value falls outside of this nodes' range
+            if (count[node] < limit) {  // there is enough room in this node for the new value
+                count[node]++;
+                // extend the range of this node, assuming that the tree structure above correctly directed
+                // the given value to this node and therefore it lies at one of the borders of the tree.
+                if (value < min) {
+                    minValue[node] = value;
+                }
+                if (value > max) {
+                    maxValue[node] = value;
+                }
+            } else {  // not enough room, create a new sibling node for the new value and put both under a new fork node
+                if (value < min) {
+                    float newMin = Math.min(min, (value + max) / 2);
+                    int valueNode = newDataNode(1, value, newMin);
+                    int sibling = newDataNode(count[node], newMin, max);
+                    fork(node, newMin, valueNode, sibling);
+                } else {
+                    float newMax = Math.max(max, (min + value) / 2);
+                    int sibling = newDataNode(count[node], min, newMax);
+                    int valueNode = newDataNode(1, newMax, value);
+                    fork(node, newMax, sibling, valueNode);
+                }
+            }
         }
-        root = root.addValue(this, value);
+    }
+
+    /**
+     * Adds all the data points of another histogram to this one.<p>
+     * The buckets of both histograms are resampled onto the union of their range limits, assuming uniform
+     * distribution inside each bucket, the same assumption percentile queries make. The tree is then rebuilt
+     * balanced over the resulting buckets. The merged cumulative density function is therefore exact at every range
+     * limit of both histograms, and the error of a merged percentile is bounded by the width of the buckets it falls
+     * into. The work is proportional to the number of buckets, not to the number of data points.
+     * If the merged histogram would have more than {@value #MAX_MERGED_BUCKETS} buckets, adjacent buckets
+     * with the lowest counts are joined.
+     * @param other the histogram to merge into this one.
+     */
+    public void merge(AdaptiveHistogram other) {
+        final ArrayList<Cell> cells = other.toTable();
+        synchronized (this) {
+            long mergedCount = totalCount;
+            for (Cell cell : cells) {
+                mergedCount += cell.count;
+            }
+            final ArrayList<Cell> merged = join(resample(toTable(), cells), mergedCount);
+            reset();
+            for (Cell cell : merged) {
+                final int node = newDataNode(cell.count, cell.minValue, cell.maxValue);
+                previous[node] = node - 1;
+                next[node] = node + 1 < merged.size() ? node + 1 : NONE;
+            }
+            first = merged.isEmpty() ? NONE : 0;
+            root = merged.isEmpty() ? NONE : build(0, merged.size() - 1);
+            totalCount = mergedCount;
+        }
+    }
+
+    /**
+     * Merges many histograms into a new one.
+     * @param histograms the histograms to merge.
+     * @return a new histogram with the data points of all the given histograms.
+     */
+    public static AdaptiveHistogram merge(Iterable<? extends AdaptiveHistogram> histograms) {
+        final AdaptiveHistogram merged = new AdaptiveHistogram();
+        for (AdaptiveHistogram h : histograms) {
+            merged.merge(h);
+        }
+        return merged;
     }
 
     /**
@@ -72,12 +222,18 @@ public class AdaptiveHistogram implements Serializable {
      * @param value the reference data point.
      * @return the number of data points stored in the same bucket as the reference point.
      */
-    public long getCount(float value) {
-        long count = 0;
-        if (null != root) {
-            count = root.getCount(value);
+    public synchronized long getCount(float value) {
+        long res = 0;
+        if (NONE != root) {
+            int node = root;
+            while (NONE != left[node]) {
+                node = (value > splitValue[node]) ? right[node] : left[node];
+            }
+            if (value >= minValue[node] && value <= maxValue[node]) {
+                res = count[node];
+            }
         }
-        return count;
+        return res;
     }
 
     /**
@@ -85,26 +241,104 @@ public class AdaptiveHistogram implements Serializable {
      * @param value the reference data point.
      * @return the cumulative density function for the reference point.
      */
-    public long getAccumCount(float value) {
-        long count = 0;
-        if (null != root) {
-            count = root.getAccumCount(value);
+    public synchronized long getAccumCount(float value) {
+        long res = 0;
+        if (NONE != root) {
+            int depth = 0;
+            stack[depth++] = root;
+            while (depth > 0) {
+                final int node = stack[--depth];
+                if (NONE == left[node]) {
+                    if (value >= minValue[node]) {
+                        res += count[node];
+                    }
+                } else {
+                    // the left subtree is always counted, the right one only if the value is above the split value
+                    if (depth + 2 > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[depth++] = left[node];
+                    if (value > splitValue[node]) {
+                        stack[depth++] = right[node];
+                    }
+                }
+            }
         }
-        return count;
+        return res;
     }
 
     /**
      * Returns the data point that splits the data set at a given percentile.
+     * It walks the data nodes in value order until the running cumulative count reaches the target cumulative count,
+     * and uses linear interpolation over the range of that node to get a better estimate of the true value.
+     * @param percentile the percentile at which the data set is split.
+     * @return the data point that splits the data set at the given percentile.
+     */
+    public synchronized float getValueForPercentile(int percentile) {
+        return getValueForAccumCount((totalCount * percentile) / 100);
+    }
+
+    /**
+     * Returns the data point that splits the data set at a given fractional percentile, e.g. 99.9.
      * @param percentile the percentile at which the data set is split.
      * @return the data point that splits the data set at the given percentile.
+     * @see #getValueForPercentile(int)
+     */
+    public synchronized float getValueForPercentile(double percentile) {
+        return getValueForAccumCount(getAccumCountForPercentile(percentile));
+    }
+
+    /**
+     * Returns the data points that split the data set at the given percentiles, walking the data nodes only once.
+     * @param percentiles the percentiles at which the data set is split, in any order.
+     * @return the data points that split the data set at the given percentiles, in the order of the percentiles.
      */
-    public float getValueForPercentile(int percentile) {
-        long targetAccumCount = (totalCount * percentile) / 100;
-        Float value = new Float(0);
-        if (null != root) {
-            value = root.getValueForAccumCount(new long[]{0, targetAccumCount});
+    public synchronized float[] getValuesForPercentiles(double... percentiles) {
+        final float[] values = new float[percentiles.length];
+        final long[] targets = new long[percentiles.length];
+        final int[] order = new int[percentiles.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            targets[i] = getAccumCountForPercentile(percentiles[i]);
+            // insertion sort of the indexes by target: a few percentiles, usually given in ascending order already
+            int j = i;
+            for (; j > 0 && targets[order[j - 1]] > targets[i]; j--) {
+                order[j] = order[j - 1];
+            }
+            order[j] = i;
+        }
+
+        int k = 0;
+        while (k < order.length && targets[order[k]] < 0) {
+            k++;  // below the data set, like in getValueForPercentile
+        }
+        long runningAccumCount = 0;
+        for (int node = first; NONE != node && k < order.length; node = next[node]) {
+            // answer every target inside this node; the lower ones were answered by the previous nodes
+            while (k < order.length && runningAccumCount + count[node] >= targets[order[k]]) {
+                values[order[k]] = interpolate((float) runningAccumCount, minValue[node],
+                        (float) (runningAccumCount + count[node]), maxValue[node], (float) targets[order[k]]);
+                k++;
+            }
+            runningAccumCount += count[node];
+        }
+        return values;
+    }
+
+    // Walks the data nodes in value order to the node containing the target cumulative count.
+    private float getValueForAccumCount(long targetAccumCount) {
+        long runningAccumCount = 0;
+        for (int node = first; NONE != node; node = next[node]) {
+            if (runningAccumCount <= targetAccumCount && runningAccumCount + count[node] >= targetAccumCount) {
+                return interpolate((float) runningAccumCount, minValue[node], (float) (runningAccumCount + count[node]),
+                        maxValue[node], (float) targetAccumCount);
+            }
+            runningAccumCount += count[node];
         }
-        return (null != value) ? value.floatValue() : 0;
+        return 0;
+    }
+
+    private long getAccumCountForPercentile(double percentile) {
+        return (long) Math.floor(totalCount * percentile / 100);
     }
 
     /**
@@ -137,23 +371,23 @@ public class AdaptiveHistogram implements Serializable {
      * @param targetMin the target new minimum value.
      * @param targetMax the target new maximum value.
      */
-    public void normalize(float targetMin, float targetMax) {
-        if (null != root) {
+    public synchronized void normalize(float targetMin, float targetMax) {
+        if (NONE != root) {
             final float min = getValueForPercentile(0);
             final float max = getValueForPercentile(100);
             final float m = (targetMax - targetMin) * ((max > min) ? 1 / (max - min) : 1);
             final float b = targetMin;
-            root.apply(new ValueConversion() { public float convertValue(float value) { return m * (value - min) + b; } });
+            apply(new ValueConversion() { public float convertValue(float value) { return m * (value - min) + b; } });
         }
     }
 
     /**
      * Shows the histograms' underlying data structure.
      */
-    public void show() {
+    public synchronized void show() {
         System.out.println("Histogram has " + totalCount + " values:");
-        if (null != root) {
-            root.show(0);
+        if (NONE != root) {
+            show(root, 0);
         }
     }
 
@@ -161,12 +395,322 @@ public class AdaptiveHistogram implements Serializable {
      * Return a table representing the data in this histogram.
      * Each element is a table cell containing the range limit values and the count for that range.
      */
-    public ArrayList<Cell> toTable() {
+    public synchronized ArrayList<Cell> toTable() {
         ArrayList<Cell> table = new ArrayList<Cell>();
-        if (null != root) {
-            root.toTable(table);
+        for (int node = first; NONE != node; node = next[node]) {
+            Cell cell = new Cell();
+            cell.count = count[node];
+            cell.minValue = minValue[node];
+            cell.maxValue = maxValue[node];
+            table.add(cell);
         }
         return table;
     }
 
-}
\ No newline at end of file
+    /**
+     * Encodes the histogram in a compact, versioned binary format.<p>
+     * The format is a version byte, a flags byte and the tree in pre-order, optionally deflated.
+     * A fork node is written as a zero tag and its split value, a data node as its count and range.
+     * Counts are variable length integers, and every value is written as the zig-zag encoded difference between
+     * its bits and the bits of the previous value, so neighbouring buckets take a few bytes each.
+     * Unlike java serialization, the format does not depend on the layout of this class.
+     * @param compress whether to deflate the encoded tree.
+     * @return the encoded histogram, see {@link #decode(byte[])}.
+     */
+    public synchronized byte[] encode(boolean compress) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + 4 * size);
+        bytes.write(ENCODING_VERSION);
+        bytes.write(compress ? COMPRESSED : 0);
+        try {
+            final OutputStream out = compress ? new DeflaterOutputStream(bytes) : bytes;
+            Varint.write(out, size);
+            int previousValue = 0;
+            int depth = 0;
+            if (NONE != root) {
+                stack[depth++] = root;
+            }
+            while (depth > 0) {
+                final int node = stack[--depth];
+                if (NONE == left[node]) {
+                    Varint.write(out, 2 * count[node] + 1);
+                    previousValue = writeValue(out, minValue[node], previousValue);
+                    previousValue = writeValue(out, maxValue[node], previousValue);
+                } else {
+                    Varint.write(out, 0);
+                    previousValue = writeValue(out, splitValue[node], previousValue);
+                    if (depth + 2 > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[depth++] = right[node];
+                    stack[depth++] = left[node];
+                }
+            }
+            out.close();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot encode histogram", e);  // not thrown by in-memory streams
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a histogram encoded by {@link #encode(boolean)}.
+     * @param bytes the encoded histogram.
+     * @return the decoded histogram, with the same tree as the encoded one.
+     * @throws IllegalArgumentException if the bytes are not a histogram encoded in a supported version.
+     */
+    public static AdaptiveHistogram decode(byte[] bytes) {
+        if (bytes.length < 2 || bytes[0] != ENCODING_VERSION) {
+            throw new IllegalArgumentException("Unsupported histogram encoding version "
+                    + (bytes.length == 0 ? "none" : String.valueOf(bytes[0])));
+        }
+        InputStream in = new ByteArrayInputStream(bytes, 2, bytes.length - 2);
+        if ((bytes[1] & COMPRESSED) != 0) {
+            in = new InflaterInputStream(in);
+        }
+        final AdaptiveHistogram h = new AdaptiveHistogram();
+        try {
+            h.decodeTree(in);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Corrupted histogram encoding", e);
+        }
+        return h;
+    }
+
+    // Rebuilds the tree from its pre-order encoding. The stack holds the fork nodes still missing their right subtree.
+    private void decodeTree(InputStream in) throws IOException {
+        final long nodes = Varint.readRequired(in);
+        int previousValue = 0;
+        int lastDataNode = NONE;
+        int depth = 0;
+        for (long i = 0; i < nodes; i++) {
+            final long tag = Varint.readRequired(in);
+            final int node;
+            if (0 == tag) {
+                node = newDataNode(0, 0, 0);
+                previousValue += (int) Varint.readSigned(in);
+                splitValue[node] = valueOf(previousValue);
+                left[node] = PENDING;
+            } else {
+                previousValue += (int) Varint.readSigned(in);
+                final float min = valueOf(previousValue);
+                previousValue += (int) Varint.readSigned(in);
+                node = newDataNode(tag >>> 1, min, valueOf(previousValue));
+                totalCount += count[node];
+                previous[node] = lastDataNode;
+                next[node] = NONE;
+                if (NONE == lastDataNode) {
+                    first = node;
+                } else {
+                    next[lastDataNode] = node;
+                }
+                lastDataNode = node;
+            }
+
+            if (NONE == root) {
+                root = node;
+            } else if (0 == depth) {
+                throw new IOException("Node outside of the tree");
+            } else if (PENDING == left[stack[depth - 1]]) {
+                left[stack[depth - 1]] = node;
+            } else {
+                right[stack[--depth]] = node;
+            }
+            if (0 == tag) {
+                if (depth + 1 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[depth++] = node;
+            }
+        }
+        if (depth > 0) {
+            throw new IOException("Incomplete tree");
+        }
+    }
+
+    // Writes the difference between the order preserving bits of a value and the previous value.
+    private static int writeValue(OutputStream out, float value, int previousValue) throws IOException {
+        final int bits = Float.floatToIntBits(value);
+        final int ordered = bits ^ ((bits >> 31) & 0x7FFFFFFF);
+        Varint.writeSigned(out, (long) ordered - previousValue);
+        return ordered;
+    }
+
+    private static float valueOf(int ordered) {
+        return Float.intBitsToFloat(ordered ^ ((ordered >> 31) & 0x7FFFFFFF));
+    }
+
+    // Distributes the counts of two sorted bucket lists over the union of their range limits.
+    private static ArrayList<Cell> resample(ArrayList<Cell> a, ArrayList<Cell> b) {
+        final float[] limits = new float[2 * (a.size() + b.size())];
+        int n = 0;
+        for (ArrayList<Cell> cells : Arrays.asList(a, b)) {
+            for (Cell cell : cells) {
+                limits[n++] = cell.minValue;
+                limits[n++] = cell.maxValue;
+            }
+        }
+        Arrays.sort(limits, 0, n);
+        int unique = 0;
+        for (int i = 0; i < n; i++) {
+            if (0 == unique || limits[i] != limits[unique - 1]) {
+                limits[unique++] = limits[i];
+            }
+        }
+
+        // points[i] counts the zero-width buckets at limits[i], ranges[i] the data points between limits[i] and limits[i + 1]
+        final double[] points = new double[unique];
+        final double[] ranges = new double[unique];
+        for (ArrayList<Cell> cells : Arrays.asList(a, b)) {
+            for (Cell cell : cells) {
+                int i = Arrays.binarySearch(limits, 0, unique, cell.minValue);
+                if (cell.minValue == cell.maxValue) {
+                    points[i] += cell.count;
+                } else {
+                    final double width = cell.maxValue - cell.minValue;
+                    for (; limits[i] < cell.maxValue; i++) {
+                        ranges[i] += cell.count * (limits[i + 1] - limits[i]) / width;
+                    }
+                }
+            }
+        }
+
+        // round the running cumulative count, so no data point is lost or added
+        final ArrayList<Cell> merged = new ArrayList<Cell>();
+        double accum = 0;
+        long assigned = 0;
+        for (int i = 0; i < unique; i++) {
+            accum += points[i];
+            assigned += addCell(merged, Math.round(accum) - assigned, limits[i], limits[i]);
+            if (i + 1 < unique) {
+                accum += ranges[i];
+                assigned += addCell(merged, Math.round(accum) - assigned, limits[i], limits[i + 1]);
+            }
+        }
+        return merged;
+    }
+
+    private static long addCell(ArrayList<Cell> cells, long cellCount, float min, float max) {
+        if (cellCount > 0) {
+            final Cell cell = new Cell();
+            cell.count = cellCount;
+            cell.minValue = min;
+            cell.maxValue = max;
+            cells.add(cell);
+        }
+        return Math.max(cellCount, 0);
+    }
+
+    // Joins adjacent buckets with low counts until there are at most MAX_MERGED_BUCKETS.
+    private static ArrayList<Cell> join(ArrayList<Cell> cells, long total) {
+        long threshold = Math.max(1, 2 * total / MAX_MERGED_BUCKETS);
+        while (cells.size() > MAX_MERGED_BUCKETS) {
+            final ArrayList<Cell> joined = new ArrayList<Cell>();
+            for (Cell cell : cells) {
+                final Cell last = joined.isEmpty() ? null : joined.get(joined.size() - 1);
+                if (null != last && last.count + cell.count <= threshold) {
+                    last.count += cell.count;
+                    last.maxValue = cell.maxValue;
+                } else {
+                    joined.add(cell);
+                }
+            }
+            cells = joined;
+            threshold *= 2;
+        }
+        return cells;
+    }
+
+    // Builds a balanced subtree over the data nodes from..to, which are in value order.
+    private int build(int from, int to) {
+        if (from == to) {
+            return from;
+        }
+        final int middle = (from + to) >>> 1;
+        final int leftNode = build(from, middle);
+        final int rightNode = build(middle + 1, to);
+        final int node = newDataNode(0, 0, 0);
+        left[node] = leftNode;
+        right[node] = rightNode;
+        splitValue[node] = maxValue[middle];
+        return node;
+    }
+
+    // Linear interpolation for float values.
+    private float interpolate(float x0, float y0, float x1, float y1, float x) {
+        return y0+((x-x0)*(y1-y0))/(x1-x0);
+    }
+
+    // Appends a data node for the given range with the given instance count.
+    private int newDataNode(long nodeCount, float min, float max) {
+        if (size == left.length) {
+            final int capacity = size * 2;
+            left = Arrays.copyOf(left, capacity);
+            right = Arrays.copyOf(right, capacity);
+            splitValue = Arrays.copyOf(splitValue, capacity);
+            count = Arrays.copyOf(count, capacity);
+            minValue = Arrays.copyOf(minValue, capacity);
+            maxValue = Arrays.copyOf(maxValue, capacity);
+            next = Arrays.copyOf(next, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+        }
+        final int node = size++;
+        left[node] = NONE;
+        right[node] = NONE;
+        count[node] = nodeCount;
+        minValue[node] = min;
+        maxValue[node] = max;
+        return node;
+    }
+
+    // Turns a data node into a fork node, replacing it by its two new data nodes in the value order.
+    private void fork(int node, float split, int leftNode, int rightNode) {
+        previous[leftNode] = previous[node];
+        next[leftNode] = rightNode;
+        previous[rightNode] = leftNode;
+        next[rightNode] = next[node];
+        if (NONE == previous[node]) {
+            first = leftNode;
+        } else {
+            next[previous[node]] = leftNode;
+        }
+        if (NONE != next[node]) {
+            previous[next[node]] = rightNode;
+        }
+        left[node] = leftNode;
+        right[node] = rightNode;
+        splitValue[node] = split;
+    }
+
+    // Applies a conversion function to the values stored in the histogram.
+    private void apply(ValueConversion valueConversion) {
+        for (int node = 0; node < size; node++) {
+            if (NONE == left[node]) {
+                minValue[node] = valueConversion.convertValue(minValue[node]);
+                maxValue[node] = valueConversion.convertValue(maxValue[node]);
+            } else {
+                splitValue[node] = valueConversion.convertValue(splitValue[node]);
+            }
+        }
+    }
+
+    // Prints the subtree with a margin depending on the level of the node in the tree.
+    private void show(int node, int level) {
+        if (NONE == left[node]) {
+            margin(level);
+            System.out.println("Data: " + count[node] + " (" + minValue[node] + "," + maxValue[node] + ")");
+        } else {
+            show(left[node], level + 1);
+            margin(level);
+            System.out.println("Fork at: " + splitValue[node]);
+            show(right[node], level + 1);
+        }
+    }
+
+    // Prints a margin corresponding to the provided tree level.
+    private void margin(int level) {
+        for (int i = 0; i < level; i++) {
+            System.out.print("  ");
+        }
+    }
+
+}
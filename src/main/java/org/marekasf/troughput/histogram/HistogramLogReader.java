@@ -0,0 +1,100 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.troughput.histogram;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Replays an interval log written by {@link HistogramLogWriter}.
+ */
+public class HistogramLogReader implements Closeable {
+
+    private final DataInputStream in;
+
+    /**
+     * Opens a log on a stream and checks its header.
+     * @param in the stream to read from.
+     * @throws IOException if the stream does not start with a log header of a supported version.
+     */
+    public HistogramLogReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(in);
+        final byte[] header = new byte[HistogramLogWriter.HEADER.length];
+        this.in.readFully(header);
+        if (!Arrays.equals(header, HistogramLogWriter.HEADER)) {
+            throw new IOException("Not a histogram log");
+        }
+        final int version = this.in.read();
+        if (version != HistogramLogWriter.VERSION) {
+            throw new IOException("Unsupported histogram log version " + version);
+        }
+    }
+
+    public HistogramLogReader(File file) throws IOException {
+        this(new BufferedInputStream(new FileInputStream(file)));
+    }
+
+    /**
+     * Reads the next interval.
+     * @return the next interval, or null at the end of the log.
+     */
+    public Interval next() throws IOException {
+        final long startMillis = Varint.read(in);
+        if (startMillis < 0) {
+            return null;
+        }
+        final long lengthMillis = Varint.readRequired(in);
+        final byte[] encoded = new byte[(int) Varint.readRequired(in)];
+        in.readFully(encoded);
+        return new Interval(startMillis, startMillis + lengthMillis, AdaptiveHistogram.decode(encoded));
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * The histogram of the data points recorded in one interval.
+     */
+    public static class Interval {
+        private final long startMillis;
+        private final long endMillis;
+        private final AdaptiveHistogram histogram;
+
+        Interval(long startMillis, long endMillis, AdaptiveHistogram histogram) {
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+            this.histogram = histogram;
+        }
+
+        public long getStartMillis() {
+            return startMillis;
+        }
+
+        public long getEndMillis() {
+            return endMillis;
+        }
+
+        public AdaptiveHistogram getHistogram() {
+            return histogram;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.troughput.histogram;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Appends one encoded {@link AdaptiveHistogram} per reporting interval to a log, to be replayed by {@link HistogramLogReader}.<p>
+ * The log starts with a header and a format version. Every entry is the interval start time in milliseconds since the epoch,
+ * the interval length in milliseconds, the length of the encoded histogram and the histogram itself,
+ * see {@link AdaptiveHistogram#encode(boolean)}. Each entry is flushed when appended, so the log of a killed run
+ * is readable up to its last completed interval.
+ */
+public class HistogramLogWriter implements Closeable {
+
+    static final byte[] HEADER = {'A', 'H', 'L', 'O', 'G'};
+    static final int VERSION = 1;
+
+    private final OutputStream out;
+    private final boolean compress;
+
+    /**
+     * Starts a new log on a stream.
+     * @param out the stream to write to.
+     * @param compress whether to deflate the histograms.
+     */
+    public HistogramLogWriter(OutputStream out, boolean compress) throws IOException {
+        this.out = out;
+        this.compress = compress;
+        out.write(HEADER);
+        out.write(VERSION);
+        out.flush();
+    }
+
+    /**
+     * Opens a log file for appending. The header is written only if the file is new or empty,
+     * so several runs, or the stages of a load profile, can share a log.
+     * @param file the log file.
+     * @param compress whether to deflate the histograms.
+     */
+    public HistogramLogWriter(File file, boolean compress) throws IOException {
+        final boolean empty = file.length() == 0;
+        this.out = new BufferedOutputStream(new FileOutputStream(file, true));
+        this.compress = compress;
+        if (empty) {
+            out.write(HEADER);
+            out.write(VERSION);
+            out.flush();
+        }
+    }
+
+    /**
+     * Appends the histogram of an interval.
+     * @param startMillis the interval start, in milliseconds since the epoch.
+     * @param endMillis the interval end, in milliseconds since the epoch.
+     * @param histogram the data points recorded in the interval.
+     */
+    public synchronized void append(long startMillis, long endMillis, AdaptiveHistogram histogram) throws IOException {
+        final byte[] encoded = histogram.encode(compress);
+        Varint.write(out, startMillis);
+        Varint.write(out, endMillis - startMillis);
+        Varint.write(out, encoded.length);
+        out.write(encoded);
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,213 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.troughput.histogram;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Records values from many threads without locking and merges them into a single
+ * {@link AdaptiveHistogram} only when the histogram is read.
+ * Values are appended to a fixed set of stripes selected by the recording thread's id, so the memory used does not
+ * depend on the number of threads that have ever recorded, and short lived threads leave nothing behind.
+ * A recording thread claims a slot of the stripe's current chunk with an atomic increment, writes the value and
+ * publishes it with a second one; a thread finding the chunk full retires it, replacing it with a spare chunk by a CAS.
+ * Readers retire the current chunks as well, wait for the claimed slots to be published and merge the values into
+ * the histogram under the recorder lock, which is never taken by recording threads. Merged chunks are recycled as
+ * spares, so recording allocates only when more chunks fill up between two reads than were recycled.
+ * Besides the histogram of all values, the recorder keeps a double buffered interval histogram:
+ * {@link #swapInterval()} swaps the active and inactive buffers, so every value is counted in exactly one interval.
+ */
+public class HistogramRecorder {
+
+    private static final int CHUNK_SIZE = 1024;
+    private static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+    private static final AtomicReferenceFieldUpdater<Stripe, Chunk> CURRENT =
+            AtomicReferenceFieldUpdater.newUpdater(Stripe.class, Chunk.class, "current");
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final ConcurrentLinkedQueue<Chunk> spares = new ConcurrentLinkedQueue<Chunk>();
+    private final AdaptiveHistogram histogram = new AdaptiveHistogram();
+    private AdaptiveHistogram active = new AdaptiveHistogram();    // interval being recorded
+    private AdaptiveHistogram inactive = new AdaptiveHistogram();  // last completed interval
+    private boolean intervalCompleted = false;
+
+    public HistogramRecorder() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Adds a data point to the recorder. Does not block; contends only with the threads recording to the same stripe.
+     * @param value the data point to add.
+     */
+    public void recordValue(float value) {
+        final Stripe s = stripes[index(Thread.currentThread().getId())];
+        while (true) {
+            final Chunk chunk = s.current;
+            final int slot = Chunk.CLAIMED.getAndIncrement(chunk);
+            if (slot < CHUNK_SIZE) {
+                chunk.values[slot] = value;
+                Chunk.WRITTEN.incrementAndGet(chunk);
+                return;
+            }
+            retire(s, chunk);
+        }
+    }
+
+    /**
+     * Merges all the data points recorded so far into the histogram.
+     */
+    public synchronized void flush() {
+        drain(true);
+    }
+
+    /**
+     * Adds all the data points of a histogram recorded elsewhere, e.g. by another process, to the histogram and the
+     * current interval.
+     * @param other the histogram to merge.
+     */
+    public synchronized void merge(AdaptiveHistogram other) {
+        drain(true);
+        histogram.merge(other);
+        active.merge(other);
+    }
+
+    /**
+     * Returns the histogram containing all the data points recorded so far.
+     * @return the merged histogram.
+     */
+    public synchronized AdaptiveHistogram getHistogram() {
+        drain(true);
+        return histogram;
+    }
+
+    /**
+     * Ends the current interval: merges the pending data points, swaps the active and inactive interval histograms
+     * and returns the histogram of the interval just completed.
+     * The returned histogram is reused by the next swap. Hold the recorder's monitor while reading it
+     * if another thread may swap concurrently.
+     * @return the histogram of the data points recorded since the previous swap.
+     */
+    public synchronized AdaptiveHistogram swapInterval() {
+        drain(true);
+        final AdaptiveHistogram completed = active;
+        active = inactive;
+        active.reset();
+        inactive = completed;
+        intervalCompleted = true;
+        return completed;
+    }
+
+    /**
+     * Returns the histogram of the last completed interval. The same rules as for {@link #swapInterval()} apply.
+     * @return the last completed interval, or null if no interval has been completed yet.
+     */
+    public synchronized AdaptiveHistogram getLastInterval() {
+        return intervalCompleted ? inactive : null;
+    }
+
+    /**
+     * Erases all data recorded so far.
+     */
+    public synchronized void reset() {
+        drain(false);
+        histogram.reset();
+        active.reset();
+        inactive.reset();
+        intervalCompleted = false;
+    }
+
+    private void drain(boolean merge) {
+        for (Stripe s : stripes) {
+            final Chunk current = s.current;
+            if (current.claimed > 0) {
+                retire(s, current);
+            }
+            Chunk chunk;
+            while (null != (chunk = s.retired.poll())) {
+                // slots claimed before the chunk was closed are written shortly
+                while (chunk.written < chunk.limit) {
+                    Thread.yield();
+                }
+                if (merge) {
+                    for (int i = 0; i < chunk.limit; i++) {
+                        histogram.addValue(chunk.values[i]);
+                        active.addValue(chunk.values[i]);
+                    }
+                }
+                // a thread still holding the retired chunk may claim a slot once it is reset: the value then lands in
+                // the spare and is read with it, so written is reset before claimed
+                chunk.written = 0;
+                chunk.claimed = 0;
+                spares.offer(chunk);
+            }
+        }
+    }
+
+    /**
+     * Replaces the stripe's current chunk by a spare and closes it: slots claimed later fall beyond the chunk size,
+     * so their threads retry with the new chunk. Only the thread replacing the chunk queues it for the readers.
+     */
+    private void retire(Stripe s, Chunk chunk) {
+        Chunk spare = spares.poll();
+        if (spare == null) {
+            spare = new Chunk();
+        }
+        if (CURRENT.compareAndSet(s, chunk, spare)) {
+            chunk.limit = Math.min(Chunk.CLAIMED.getAndAdd(chunk, CHUNK_SIZE), CHUNK_SIZE);
+            s.retired.offer(chunk);
+        } else {
+            spares.offer(spare);
+        }
+    }
+
+    private static int index(long threadId) {
+        // thread ids are sequential, spread them so neighbours do not share a stripe's cache lines
+        final long h = threadId * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & (STRIPES - 1);
+    }
+
+    /**
+     * @return a power of two stripe count, at least twice the number of processors, so that threads rarely collide.
+     */
+    private static int stripes(int processors) {
+        return Integer.highestOneBit(Math.max(1, processors * 2 - 1)) << 1;
+    }
+
+    /**
+     * A block of values written by any thread of a stripe, one claimed slot each.
+     */
+    private static final class Chunk {
+        static final AtomicIntegerFieldUpdater<Chunk> CLAIMED =
+                AtomicIntegerFieldUpdater.newUpdater(Chunk.class, "claimed");
+        static final AtomicIntegerFieldUpdater<Chunk> WRITTEN =
+                AtomicIntegerFieldUpdater.newUpdater(Chunk.class, "written");
+
+        final float[] values = new float[CHUNK_SIZE];
+        volatile int claimed;  // slots handed out, beyond CHUNK_SIZE once the chunk is full or closed
+        volatile int written;  // slots written, publishes the values to readers
+        int limit;             // slots claimed before closing, published to readers by the retired queue
+    }
+
+    /**
+     * The chunk being filled by the threads hashed to the same index and the retired chunks, oldest first.
+     */
+    private static final class Stripe {
+        volatile Chunk current = new Chunk();
+        final ConcurrentLinkedQueue<Chunk> retired = new ConcurrentLinkedQueue<Chunk>();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.troughput.histogram;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Variable length encoding of non-negative longs, 7 bits per byte, least significant group first.
+ * Signed values are zig-zag encoded first, so small magnitudes of either sign take few bytes.
+ */
+final class Varint {
+
+    private Varint() {
+    }
+
+    static void write(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static void writeSigned(OutputStream out, long value) throws IOException {
+        write(out, (value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * @return the next value, or -1 if the stream ended before its first byte.
+     */
+    static long read(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.read();
+            if (b < 0) {
+                if (0 == shift) {
+                    return -1;
+                }
+                throw new EOFException("Truncated varint");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static long readRequired(InputStream in) throws IOException {
+        final long value = read(in);
+        if (value < 0) {
+            throw new EOFException("Unexpected end of stream");
+        }
+        return value;
+    }
+
+    static long readSigned(InputStream in) throws IOException {
+        final long value = readRequired(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,214 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.throughput;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.marekasf.troughput.histogram.AdaptiveHistogram;
+
+public class AdaptiveHistogramTest
+{
+	/**
+	 * Expected values were produced by the original object tree implementation from the same data.
+	 */
+	@Test
+	public void matchesTreeImplementation()
+	{
+		final AdaptiveHistogram h = logNormal(10000);
+
+		assertThat(h.getValueForPercentile(0)).isEqualTo(0.4336361f);
+		assertThat(h.getValueForPercentile(5)).isEqualTo(3.8283348f);
+		assertThat(h.getValueForPercentile(25)).isEqualTo(10.332495f);
+		assertThat(h.getValueForPercentile(50)).isEqualTo(20.306814f);
+		assertThat(h.getValueForPercentile(75)).isEqualTo(39.643417f);
+		assertThat(h.getValueForPercentile(90)).isEqualTo(73.3965f);
+		assertThat(h.getValueForPercentile(95)).isEqualTo(124.69597f);
+		assertThat(h.getValueForPercentile(99)).isEqualTo(353.05396f);
+		assertThat(h.getValueForPercentile(100)).isEqualTo(1032.7666f);
+		assertThat(h.toTable()).hasSize(27);
+		assertThat(h.getAccumCount(5f)).isEqualTo(1042);
+		assertThat(h.getAccumCount(20f)).isEqualTo(5464);
+		assertThat(h.getAccumCount(100f)).isEqualTo(9876);
+		assertThat(h.getCount(5f)).isEqualTo(382);
+		assertThat(h.getCount(20f)).isEqualTo(518);
+		assertThat(h.getCount(100f)).isEqualTo(589);
+	}
+
+	@Test
+	public void answersFractionalAndBatchedPercentiles()
+	{
+		final AdaptiveHistogram h = logNormal(100000);
+		final double[] percentiles = { 99.99, 50, 0, 99.9, 100, 99, 25.5, 101, -1 };
+
+		final float[] values = h.getValuesForPercentiles(percentiles);
+
+		for (int i = 0; i < percentiles.length; ++i)
+		{
+			assertThat(values[i]).isEqualTo(h.getValueForPercentile(percentiles[i]));
+		}
+		for (int p = 0; p <= 100; ++p)
+		{
+			assertThat(h.getValueForPercentile((double) p)).isEqualTo(h.getValueForPercentile(p));
+		}
+		assertThat(h.getValueForPercentile(99.9)).isGreaterThan(h.getValueForPercentile(99)).isLessThan(
+				h.getValueForPercentile(99.99));
+		assertThat(h.getValueForPercentile(99.99)).isLessThanOrEqualTo(h.getValueForPercentile(100));
+	}
+
+	@Test
+	public void recordsAndQueriesWithoutAllocation()
+	{
+		final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+		final com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+
+		final AdaptiveHistogram h = logNormal(100000);
+		final Random random = new Random(7);
+		float sum = 0;
+
+		final long before = allocation.getThreadAllocatedBytes(Thread.currentThread().getId());
+		for (int i = 0; i < 100000; ++i)
+		{
+			h.addValue((float) Math.exp(random.nextGaussian() + 3));
+			sum += h.getValueForPercentile(i % 101);
+		}
+		final long allocated = allocation.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+		assertThat(sum).isPositive();
+		// node arrays may still grow a few times
+		assertThat(allocated).isLessThan(64 * 1024);
+	}
+
+	@Test
+	public void mergeIntoEmptyKeepsPercentiles()
+	{
+		final AdaptiveHistogram h = logNormal(10000);
+		final AdaptiveHistogram merged = new AdaptiveHistogram();
+		merged.merge(h);
+
+		for (int p = 0; p <= 100; ++p)
+		{
+			assertThat(merged.getValueForPercentile(p)).isEqualTo(h.getValueForPercentile(p));
+		}
+		assertThat(merged.getAccumCount(Float.MAX_VALUE)).isEqualTo(10000);
+	}
+
+	@Test
+	public void mergedPercentilesStayCloseToExactRank()
+	{
+		final int count = 100000;
+		final Random random = new Random(42);
+		final float[] values = new float[count];
+		final List<AdaptiveHistogram> shards = new ArrayList<>();
+		for (int i = 0; i < 8; ++i)
+		{
+			shards.add(new AdaptiveHistogram());
+		}
+		final AdaptiveHistogram single = new AdaptiveHistogram();
+		for (int i = 0; i < count; ++i)
+		{
+			values[i] = (float) Math.exp(random.nextGaussian() + 3);
+			single.addValue(values[i]);
+			shards.get(i % shards.size()).addValue(values[i]);
+		}
+		final AdaptiveHistogram merged = AdaptiveHistogram.merge(shards);
+		Arrays.sort(values);
+
+		assertThat(merged.getAccumCount(Float.MAX_VALUE)).isEqualTo(count);
+		double singleError = 0;
+		double mergedError = 0;
+		for (int p = 1; p < 100; ++p)
+		{
+			singleError = Math.max(singleError, rankError(values, single.getValueForPercentile(p), p));
+			mergedError = Math.max(mergedError, rankError(values, merged.getValueForPercentile(p), p));
+		}
+		// the merged histogram is about as accurate as recording all the values in one
+		assertThat(mergedError).isLessThan(Math.max(singleError, 1) * 1.5);
+		assertThat(mergedError).isLessThan(5);
+	}
+
+	@Test
+	public void encodingKeepsTree() throws IOException
+	{
+		final AdaptiveHistogram h = logNormal(10000);
+		for (final boolean compress : new boolean[] { false, true })
+		{
+			final AdaptiveHistogram decoded = AdaptiveHistogram.decode(h.encode(compress));
+
+			for (int p = 0; p <= 100; ++p)
+			{
+				assertThat(decoded.getValueForPercentile(p)).isEqualTo(h.getValueForPercentile(p));
+			}
+			// the same tree adapts in the same way to new data
+			final AdaptiveHistogram copy = logNormal(10000);
+			final Random random = new Random(3);
+			for (int i = 0; i < 1000; ++i)
+			{
+				final float value = (float) Math.exp(random.nextGaussian() + 4);
+				decoded.addValue(value);
+				copy.addValue(value);
+			}
+			assertThat(decoded.toTable()).hasSize(copy.toTable().size());
+			assertThat(decoded.getValueForPercentile(99)).isEqualTo(copy.getValueForPercentile(99));
+		}
+
+		final ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(serialized))
+		{
+			out.writeObject(h);
+		}
+		assertThat(h.encode(false).length).isLessThan(serialized.size() / 4);
+		assertThat(h.encode(true).length).isLessThanOrEqualTo(h.encode(false).length);
+		assertThat(AdaptiveHistogram.decode(new AdaptiveHistogram().encode(true)).getAccumCount(Float.MAX_VALUE)).isEqualTo(0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsUnknownEncodingVersion()
+	{
+		final byte[] encoded = logNormal(100).encode(false);
+		encoded[0] = 99;
+		AdaptiveHistogram.decode(encoded);
+	}
+
+	// distance in percentiles between the requested percentile and the real rank of the value
+	private double rankError(final float[] sorted, final float value, final int percentile)
+	{
+		int rank = Arrays.binarySearch(sorted, value);
+		rank = rank < 0 ? -rank - 1 : rank;
+		return Math.abs(100.0 * rank / sorted.length - percentile);
+	}
+
+	private AdaptiveHistogram logNormal(final int count)
+	{
+		final Random random = new Random(42);
+		final AdaptiveHistogram h = new AdaptiveHistogram();
+		for (int i = 0; i < count; ++i)
+		{
+			h.addValue((float) Math.exp(random.nextGaussian() + 3));
+		}
+		return h;
+	}
+}
@@ -0,0 +1,75 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.throughput;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.marekasf.troughput.AutoTune;
+import org.marekasf.troughput.ThroughputResult;
+import org.marekasf.troughput.ThroughputRunner;
+
+import rx.Observable;
+
+public class AutoTuneTest
+{
+	// a service handling 4 requests of 10 ms at a time, more clients only queue
+	private final ExecutorService service = Executors.newFixedThreadPool(4);
+
+	@After
+	public void shutdown()
+	{
+		service.shutdownNow();
+	}
+
+	@Test
+	public void findsConcurrencyWhereThroughputStopsRising()
+	{
+		final StringBuilder report = new StringBuilder();
+		final ThroughputResult result = ThroughputRunner.Builder.create(this::request) //
+				.stress(false) //
+				.testTimeInSeconds(1) //
+				.histogram(false) //
+				.graph(false) //
+				.autoTune(AutoTune.threads(1, 32).target(90, 15, TimeUnit.MILLISECONDS)) //
+				.printer((text, t) -> report.append(text).append('\n')) //
+				.run();
+
+		assertThat(result.getThreads()).isEqualTo(4);
+		assertThat(report.toString()).contains("AUTO-TUNE STAGE 1: threads 1");
+		assertThat(report.toString()).contains("AUTO-TUNE STAGE 4: threads 8");
+		assertThat(report.toString()).contains("  chosen        : threads 4, ");
+	}
+
+	private Observable<?> request()
+	{
+		return Observable.create(subscriber -> service.execute(() -> {
+			try
+			{
+				Thread.sleep(10);
+				subscriber.onNext(1);
+				subscriber.onCompleted();
+			}
+			catch (final InterruptedException e)
+			{
+				subscriber.onError(e);
+			}
+		}));
+	}
+}
@@ -0,0 +1,56 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.throughput;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+import org.marekasf.troughput.ThroughputRunner;
+
+import rx.Observable;
+
+public class CalibrationTest
+{
+	@Test
+	public void warnsOnlyWhenLatencyApproachesRunnerFloor()
+	{
+		final String noOp = run(() -> Observable.just(1));
+		assertThat(noOp).contains("CALIBRATING runner overhead: no-op action, 2 threads, 1 s");
+		assertThat(noOp).contains("RUNNER OVERHEAD (no-op action, 2 threads)");
+		assertThat(noOp).contains("WARNING p50 is within 10x of the runner's own floor");
+
+		final String slow = run(() -> Observable.timer(20, TimeUnit.MILLISECONDS));
+		assertThat(slow).contains("RUNNER OVERHEAD (no-op action, 2 threads)");
+		assertThat(slow).doesNotContain("WARNING p50");
+		assertThat(slow).doesNotContain("WARNING request rate");
+	}
+
+	private static String run(final Supplier<Observable<?>> action)
+	{
+		final StringBuilder report = new StringBuilder();
+		ThroughputRunner.Builder.create(action) //
+				.threads(2) //
+				.stress(false) //
+				.testTimeInSeconds(1) //
+				.calibrate(1) //
+				.histogram(false) //
+				.graph(false) //
+				.printer((text, t) -> report.append(text).append('\n')) //
+				.run();
+		return report.toString();
+	}
+}
@@ -0,0 +1,78 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.throughput;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.marekasf.troughput.ThroughputRunner;
+
+import rx.Observable;
+
+public class ChartDirectoryTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void writesChartsWithoutDisplay() throws IOException, InterruptedException
+	{
+		final File directory = new File(folder.getRoot(), "charts");
+		final long start = System.nanoTime();
+		ThroughputRunner.Builder.create() //
+				.action(() -> Observable.just(1)) //
+				.threads(2) //
+				.testTimeInSeconds(2) //
+				.graph(true) //
+				.chartDirectory(directory) //
+				.run();
+		final long runNs = System.nanoTime() - start;
+
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+		while (count(directory) < 4 && System.nanoTime() < deadline)
+		{
+			Thread.sleep(100);
+		}
+
+		assertThat(runNs).isLessThan(TimeUnit.SECONDS.toNanos(10));
+		final File[] files = directory.listFiles();
+		assertThat(files).hasSize(4);
+		for (final File file : files)
+		{
+			final byte[] content = Files.readAllBytes(file.toPath());
+			if (file.getName().endsWith(".png"))
+			{
+				assertThat(new String(content, 1, 3, StandardCharsets.US_ASCII)).isEqualTo("PNG");
+			}
+			else
+			{
+				assertThat(new String(content, StandardCharsets.UTF_8)).startsWith("<svg").contains("<polyline");
+			}
+		}
+	}
+
+	private static int count(final File directory)
+	{
+		final File[] files = directory.listFiles((dir, name) -> !name.endsWith(".tmp"));
+		return files == null ? 0 : files.length;
+	}
+}
@@ -0,0 +1,115 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.throughput;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.marekasf.troughput.Comparison;
+import org.marekasf.troughput.ThroughputResult;
+import org.marekasf.troughput.ThroughputRunner;
+import org.marekasf.troughput.histogram.AdaptiveHistogram;
+
+import rx.Observable;
+
+public class ComparisonTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void findsNoChangeBetweenRunsOfTheSameDistribution()
+	{
+		final Comparison c = result(1, 10, 1000).compareTo(result(2, 10, 1000));
+
+		assertThat(c.getThroughputVerdict()).isEqualTo(Comparison.Verdict.NO_SIGNIFICANT_CHANGE);
+		assertThat(c.getLatencyVerdicts()).containsOnly(Comparison.Verdict.NO_SIGNIFICANT_CHANGE);
+		assertThat(c.getKsStatistic()).isLessThan(c.getKsCriticalValue());
+		assertThat(c.isSlower()).isFalse();
+	}
+
+	@Test
+	public void findsSlowerLatencyAndThroughput()
+	{
+		final Comparison c = result(2, 13, 800).compareTo(result(1, 10, 1000));
+
+		assertThat(c.getThroughputVerdict()).isEqualTo(Comparison.Verdict.SLOWER);
+		assertThat(c.getRateDifferenceHigh()).isLessThan(0);
+		assertThat(c.getLatencyVerdicts()).containsOnly(Comparison.Verdict.SLOWER);
+		assertThat(c.isSlower()).isTrue();
+
+		final Comparison back = result(1, 10, 1000).compareTo(result(2, 13, 800));
+		assertThat(back.getThroughputVerdict()).isEqualTo(Comparison.Verdict.FASTER);
+		assertThat(back.getLatencyVerdicts()).containsOnly(Comparison.Verdict.FASTER);
+	}
+
+	@Test
+	public void savesResultAndComparesNextRunWithIt() throws IOException
+	{
+		final File baseline = new File(folder.getRoot(), "baseline.result");
+		final StringBuilder first = new StringBuilder();
+		run(baseline, first);
+		assertThat(first.toString()).contains("No baseline " + baseline + " yet, comparison skipped");
+		final ThroughputResult saved = ThroughputResult.read(baseline);
+		assertThat(saved.getRequestCount()).isGreaterThan(100);
+		assertThat(saved.getSampleRates()).hasSize(2);
+
+		final StringBuilder second = new StringBuilder();
+		run(baseline, second);
+		assertThat(second.toString()).contains("BASELINE COMPARISON with " + baseline);
+		assertThat(second.toString()).contains("throughput r/s");
+		assertThat(second.toString()).contains("Kolmogorov-Smirnov D ");
+	}
+
+	private static void run(final File baseline, final StringBuilder report)
+	{
+		ThroughputRunner.Builder.create(() -> Observable.timer(1, TimeUnit.MILLISECONDS)) //
+				.threads(2) //
+				.stress(false) //
+				.testTimeInSeconds(2) //
+				.histogram(false) //
+				.graph(false) //
+				.baseline(baseline) //
+				.saveResult(baseline) //
+				.printer((text, t) -> report.append(text).append('\n')) //
+				.run();
+	}
+
+	/**
+	 * 10 seconds of log-normal latencies around <code>medianMs</code> at about <code>rate</code> requests per second.
+	 */
+	private static ThroughputResult result(final long seed, final double medianMs, final double rate)
+	{
+		final Random random = new Random(seed);
+		final AdaptiveHistogram histogram = new AdaptiveHistogram();
+		final int count = 20000;
+		for (int i = 0; i < count; ++i)
+		{
+			histogram.addValue((float) (medianMs * 1e6 * Math.exp(0.3 * random.nextGaussian())));
+		}
+		final double[] rates = new double[10];
+		for (int i = 0; i < rates.length; ++i)
+		{
+			rates[i] = rate * (1 + 0.02 * random.nextGaussian());
+		}
+		return new ThroughputResult(1, 0, TimeUnit.SECONDS.toNanos(10), count, 0, 0, 0, histogram, rates);
+	}
+}
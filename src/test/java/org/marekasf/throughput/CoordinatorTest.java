@@ -0,0 +1,78 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.throughput;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.marekasf.troughput.AutoTune;
+import org.marekasf.troughput.Coordinator;
+import org.marekasf.troughput.LoadProfile;
+import org.marekasf.troughput.ThroughputResult;
+import org.marekasf.troughput.ThroughputRunner;
+
+import rx.Observable;
+
+public class CoordinatorTest
+{
+	@Test
+	public void mergesWorkerProcesses() throws IOException, InterruptedException
+	{
+		try (Coordinator coordinator = new Coordinator(2, ThroughputRunner.SYSOUT, TimeUnit.MICROSECONDS))
+		{
+			final ThroughputResult result = coordinator.launch(Worker.class).await(60, TimeUnit.SECONDS);
+
+			assertThat(result.getThreads()).isEqualTo(2);
+			assertThat(result.getRequestCount()).isPositive();
+			assertThat(result.getHistogram().getAccumCount(Float.MAX_VALUE)).isEqualTo(result.getRequestCount());
+			assertThat(result.getTestTimeNs()).isGreaterThanOrEqualTo(TimeUnit.SECONDS.toNanos(2));
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void rejectsLoadProfile()
+	{
+		ThroughputRunner.Builder.create(() -> Observable.just(1)).coordinator("localhost:1").profile(LoadProfile.doubling(4))
+				.run();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void rejectsAutoTune()
+	{
+		ThroughputRunner.Builder.create(() -> Observable.just(1)).coordinator("localhost:1").autoTune(AutoTune.threads(1, 4)
+				.target(99, 10, TimeUnit.MILLISECONDS)).run();
+	}
+
+	/**
+	 * Worker process started by the coordinator, connected through the system property it sets.
+	 */
+	public static class Worker
+	{
+		public static void main(final String[] args)
+		{
+			ThroughputRunner.Builder.create() //
+					.action(() -> Observable.just(1)) //
+					.threads(1) //
+					.testTimeInSeconds(2) //
+					.histogram(false) //
+					.graph(false) //
+					.printer(ThroughputRunner.SYSOUT) //
+					.run();
+			System.exit(0);
+		}
+	}
+}
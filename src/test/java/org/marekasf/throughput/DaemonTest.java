@@ -11,6 +11,13 @@
  */
 package org.marekasf.throughput;
 
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Scanner;
+
 import org.junit.Test;
 import org.marekasf.troughput.ThroughputRunner;
 
@@ -41,6 +48,38 @@ public class DaemonTest
 		daemon.stop();
 	}
 
+	@Test
+	public void servesMetrics() throws IOException, InterruptedException
+	{
+		final ThroughputRunner.Daemon daemon = ThroughputRunner.Builder.create().testTimeInSeconds(0).threads(2).stress(false) //
+				.action(() -> Observable.defer(() -> sleep())) //
+				.intervalSeconds(1) //
+				.graph(false).daemon();
+
+		daemon.start();
+		final int port = daemon.serveMetrics(0);
+		Thread.sleep(1500);
+
+		final HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/metrics")
+				.openConnection();
+		final String body;
+		try (Scanner scanner = new Scanner(connection.getInputStream(), "UTF-8"))
+		{
+			body = scanner.useDelimiter("\\A").next();
+		}
+		daemon.stop();
+
+		assertThat(connection.getResponseCode()).isEqualTo(200);
+		assertThat(connection.getContentType()).startsWith("text/plain; version=0.0.4");
+		assertThat(body).contains("# TYPE throughput_requests_total counter\nthroughput_requests_total ");
+		assertThat(body).contains("throughput_in_flight ");
+		assertThat(body).contains("throughput_request_time_seconds{quantile=\"0.99\"} 0.");
+		assertThat(body).contains("throughput_request_time_seconds_count ");
+		assertThat(body).contains("# TYPE throughput_interval_request_time_seconds gauge\n");
+		assertThat(body).doesNotContain("throughput_interval_request_time_seconds_count");
+		assertThat(daemon.metrics()).contains("throughput_errors_total 0.0");
+	}
+
 	private Observable<Boolean> sleep()
 	{
 		try
@@ -0,0 +1,62 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.throughput;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.marekasf.troughput.ThroughputRunner;
+
+import rx.Observable;
+
+public class EmissionsTest
+{
+	@Test
+	public void measuresItemsOfStreamingActions()
+	{
+		final StringBuilder report = new StringBuilder();
+		ThroughputRunner.Builder.create(() -> Observable.interval(2, TimeUnit.MILLISECONDS).take(5)) //
+				.threads(2) //
+				.stress(false) //
+				.testTimeInSeconds(1) //
+				.emissions(true) //
+				.graph(false) //
+				.printer((text, t) -> report.append(text).append('\n')) //
+				.run();
+
+		assertThat(report.toString()).contains("  avg items     : 5.0 per request");
+		assertThat(report.toString()).contains("  item rate     : ");
+		assertThat(report.toString()).contains("Main percentiles (time to first item from intended start):");
+		assertThat(report.toString()).contains("Main percentiles (gap between items):");
+		final String items = report.substring(report.indexOf("Main percentiles (items per request):"));
+		assertThat(items).contains("   50%: 5\n");
+		assertThat(items).contains("   max: 5\n");
+	}
+
+	@Test
+	public void doesNotMeasureItemsByDefault()
+	{
+		final StringBuilder report = new StringBuilder();
+		ThroughputRunner.Builder.create(() -> Observable.just(1, 2, 3)) //
+				.testTimeInSeconds(1) //
+				.graph(false) //
+				.printer((text, t) -> report.append(text).append('\n')) //
+				.run();
+
+		assertThat(report.toString()).doesNotContain("item rate");
+		assertThat(report.toString()).doesNotContain("items per request");
+	}
+}
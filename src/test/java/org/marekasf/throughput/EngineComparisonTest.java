@@ -0,0 +1,103 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.throughput;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.marekasf.troughput.Engine;
+import org.marekasf.troughput.ThroughputRunner;
+
+import rx.Observable;
+
+/**
+ * Runs a blocking action with many clients on both engines. The platform engine needs an OS thread per client,
+ * the virtual one reaches the ideal request rate (clients / action time) with a bounded number of OS threads.
+ */
+public class EngineComparisonTest
+{
+	private static final int TEST_TIME_SECONDS = 2;
+	private static final long ACTION_TIME_MS = 100;
+	private static final int VIRTUAL_CLIENTS = 2000;
+	private static final int PLATFORM_THREAD_LIMIT = 100;
+
+	private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+	@Test
+	public void platformHoldsThreadPerClient()
+	{
+		final int clients = 200;
+		final int before = threadBean.getThreadCount();
+		threadBean.resetPeakThreadCount();
+
+		final double reached = run(Engine.PLATFORM, clients);
+
+		assertThat(threadBean.getPeakThreadCount() - before).isGreaterThanOrEqualTo(clients);
+		assertThat(reached).isGreaterThan(0.5 * ideal(clients));
+	}
+
+	@Test
+	public void virtualSimulatesClientsWithoutThreads()
+	{
+		Assume.assumeTrue("Virtual threads require Java 21+", Engine.VIRTUAL.isAvailable());
+		final int before = threadBean.getThreadCount();
+		threadBean.resetPeakThreadCount();
+
+		final double reached = run(Engine.VIRTUAL, VIRTUAL_CLIENTS);
+
+		// the thread MXBean counts platform threads only: carriers and callbacks, not the clients
+		assertThat(threadBean.getPeakThreadCount() - before).isLessThan(PLATFORM_THREAD_LIMIT);
+		assertThat(reached).isGreaterThan(0.5 * ideal(VIRTUAL_CLIENTS));
+	}
+
+	/**
+	 * @return the request rate reached over the whole run, including client start-up and shut down.
+	 */
+	private double run(final Engine engine, final int clients)
+	{
+		final LongAdder completed = new LongAdder();
+		final long start = System.nanoTime();
+		ThroughputRunner.Builder.create().engine(engine).threads(clients).testTimeInSeconds(TEST_TIME_SECONDS).stress(false) //
+				.histogram(false).graph(false).printer((t, e) -> {
+				}) //
+				.action(() -> Observable.defer(() -> sleep(completed))) //
+				.run();
+		return completed.doubleValue() * TimeUnit.SECONDS.toNanos(1) / (System.nanoTime() - start);
+	}
+
+	private static double ideal(final int clients)
+	{
+		return clients * 1000. / ACTION_TIME_MS;
+	}
+
+	private Observable<Boolean> sleep(final LongAdder completed)
+	{
+		try
+		{
+			Thread.sleep(ACTION_TIME_MS);
+		}
+		catch (InterruptedException e)
+		{
+			throw new RuntimeException("Client interrupted", e);
+		}
+		completed.increment();
+		return Observable.just(true);
+	}
+}
@@ -0,0 +1,65 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.throughput;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.marekasf.troughput.ThroughputRunner;
+
+import rx.Observable;
+
+public class ErrorBucketsTest
+{
+	private final AtomicLong id = new AtomicLong();
+
+	@Test
+	public void groupsErrorsByClassAndStackWithCap()
+	{
+		final StringBuilder report = new StringBuilder();
+		ThroughputRunner.Builder.create() //
+				.action(this::fail) //
+				.threads(2) //
+				.testTimeInSeconds(1) //
+				.histogram(false) //
+				.graph(false) //
+				.maxErrorBuckets(2) //
+				.printer((text, t) -> report.append(text).append('\n')) //
+				.run();
+
+		final String errors = report.substring(report.indexOf("ERRORS "));
+		assertThat(id.get()).isGreaterThan(100);
+		// messages with ids do not create buckets, the exception class seen last overflows
+		assertThat(errors).startsWith("ERRORS 3 buckets of ");
+		assertThat(errors.split(" times : java.lang.")).hasSize(3);
+		assertThat(errors).contains(" times : other (more than 2 error buckets), p50 ");
+		assertThat(errors.split(" times at ")).hasSize(4);
+	}
+
+	private Observable<?> fail()
+	{
+		final long n = id.incrementAndGet();
+		switch ((int) (n % 3))
+		{
+			case 0:
+				return Observable.error(new IllegalStateException("request " + n));
+			case 1:
+				return Observable.error(new IllegalArgumentException("request " + n));
+			default:
+				return Observable.error(new UnsupportedOperationException("request " + n));
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.throughput;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.marekasf.troughput.ThroughputRunner;
+import org.marekasf.troughput.histogram.AdaptiveHistogram;
+import org.marekasf.troughput.histogram.HistogramLogReader;
+import org.marekasf.troughput.histogram.HistogramLogWriter;
+
+import rx.Observable;
+
+public class HistogramLogTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void replaysIntervals() throws IOException
+	{
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final Random random = new Random(1);
+		final AdaptiveHistogram[] intervals = new AdaptiveHistogram[3];
+		try (HistogramLogWriter writer = new HistogramLogWriter(bytes, true))
+		{
+			for (int i = 0; i < intervals.length; ++i)
+			{
+				intervals[i] = new AdaptiveHistogram();
+				for (int j = 0; j < 10000; ++j)
+				{
+					intervals[i].addValue((float) Math.exp(random.nextGaussian() + i));
+				}
+				writer.append(1000L * i, 1000L * (i + 1), intervals[i]);
+			}
+		}
+
+		try (HistogramLogReader reader = new HistogramLogReader(new ByteArrayInputStream(bytes.toByteArray())))
+		{
+			for (int i = 0; i < intervals.length; ++i)
+			{
+				final HistogramLogReader.Interval interval = reader.next();
+				assertThat(interval.getStartMillis()).isEqualTo(1000L * i);
+				assertThat(interval.getEndMillis()).isEqualTo(1000L * (i + 1));
+				assertThat(interval.getHistogram().getValueForPercentile(99)).isEqualTo(intervals[i].getValueForPercentile(99));
+			}
+			assertThat(reader.next()).isNull();
+		}
+	}
+
+	@Test
+	public void runnerLogsEverySample() throws IOException
+	{
+		final File log = folder.newFile("intervals.hlog");
+		ThroughputRunner.Builder.create() //
+				.action(() -> Observable.just(1)) //
+				.threads(2) //
+				.testTimeInSeconds(2) //
+				.histogram(false) //
+				.graph(false) //
+				.intervalLog(log) //
+				.run();
+
+		long count = 0;
+		int intervals = 0;
+		try (HistogramLogReader reader = new HistogramLogReader(log))
+		{
+			for (HistogramLogReader.Interval interval = reader.next(); interval != null; interval = reader.next())
+			{
+				assertThat(interval.getEndMillis()).isGreaterThanOrEqualTo(interval.getStartMillis());
+				count += interval.getHistogram().getAccumCount(Float.MAX_VALUE);
+				++intervals;
+			}
+		}
+		assertThat(intervals).isGreaterThanOrEqualTo(2);
+		assertThat(count).isPositive();
+	}
+}
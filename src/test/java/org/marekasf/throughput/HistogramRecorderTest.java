@@ -0,0 +1,138 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.throughput;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+import org.marekasf.troughput.histogram.AdaptiveHistogram;
+import org.marekasf.troughput.histogram.Cell;
+import org.marekasf.troughput.histogram.HistogramRecorder;
+
+public class HistogramRecorderTest
+{
+	private static final int SAMPLES_PER_THREAD = 100_000;
+	private static final int SHORT_LIVED_THREADS = 5_000;
+
+	@Test
+	public void recordsEverySample() throws InterruptedException
+	{
+		final HistogramRecorder recorder = new HistogramRecorder();
+
+		final long nanos = record(8, recorder::recordValue);
+		recorder.flush();
+		record(8, recorder::recordValue);
+
+		assertThat(nanos).isPositive();
+		assertThat(count(recorder.getHistogram())).isEqualTo(2L * 8 * SAMPLES_PER_THREAD);
+		assertThat(recorder.getHistogram().getValueForPercentile(50)).isGreaterThan(400).isLessThan(600);
+
+		recorder.reset();
+		assertThat(count(recorder.getHistogram())).isEqualTo(0L);
+	}
+
+	@Test
+	public void intervalsAreLossFree() throws InterruptedException
+	{
+		final HistogramRecorder recorder = new HistogramRecorder();
+		final AtomicBoolean recording = new AtomicBoolean(true);
+		final long[] intervals = new long[1];
+
+		final Thread swapper = new Thread(() -> {
+			while (recording.get())
+			{
+				intervals[0] += count(recorder.swapInterval());
+			}
+		});
+		swapper.start();
+		record(4, recorder::recordValue);
+		recording.set(false);
+		swapper.join();
+		intervals[0] += count(recorder.swapInterval());
+
+		assertThat(intervals[0]).isEqualTo(4L * SAMPLES_PER_THREAD);
+		assertThat(count(recorder.getHistogram())).isEqualTo(4L * SAMPLES_PER_THREAD);
+	}
+
+	/**
+	 * Every thread records a few values and terminates, as the callbacks of a thread-per-task executor do.
+	 * The values of threads that never filled a chunk must not be lost.
+	 */
+	@Test
+	public void recordsFromShortLivedThreads() throws InterruptedException
+	{
+		final HistogramRecorder recorder = new HistogramRecorder();
+
+		for (int t = 0; t < SHORT_LIVED_THREADS; ++t)
+		{
+			final Thread thread = new Thread(() -> IntStream.range(0, 10).forEach(i -> recorder.recordValue(i)));
+			thread.start();
+			thread.join();
+		}
+
+		assertThat(count(recorder.swapInterval())).isEqualTo(10L * SHORT_LIVED_THREADS);
+		assertThat(count(recorder.getHistogram())).isEqualTo(10L * SHORT_LIVED_THREADS);
+	}
+
+	/**
+	 * Records samples from the given number of threads started together.
+	 * @return the slowest thread's recording time in nanoseconds.
+	 */
+	private long record(final int threads, final FloatSink sink) throws InterruptedException
+	{
+		final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+		final CountDownLatch start = new CountDownLatch(1);
+		final long[] times = new long[threads];
+
+		IntStream.range(0, threads).forEach(t -> executorService.execute(() -> {
+			try
+			{
+				start.await();
+			}
+			catch (final InterruptedException e)
+			{
+				throw new RuntimeException("Recording interrupted", e);
+			}
+			final long begin = System.nanoTime();
+			for (int i = 0; i < SAMPLES_PER_THREAD; ++i)
+			{
+				sink.accept((float) (i % 1000));
+			}
+			times[t] = System.nanoTime() - begin;
+		}));
+
+		start.countDown();
+		executorService.shutdown();
+		executorService.awaitTermination(1, TimeUnit.MINUTES);
+
+		return IntStream.range(0, threads).mapToLong(t -> times[t]).max().getAsLong();
+	}
+
+	private interface FloatSink
+	{
+		void accept(float value);
+	}
+
+	private long count(final AdaptiveHistogram histogram)
+	{
+		return histogram.toTable().stream().mapToLong((Cell c) -> c.count).sum();
+	}
+}
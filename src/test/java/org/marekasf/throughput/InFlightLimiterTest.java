@@ -0,0 +1,102 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.throughput;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.marekasf.troughput.ThroughputRunner;
+
+import rx.Observable;
+
+/**
+ * Drives requests that fail, complete empty or never complete through a capped runner, watching the in-flight gauge.
+ */
+public class InFlightLimiterTest
+{
+	private static final int MAX_IN_FLIGHT = 3;
+
+	private final AtomicLong calls = new AtomicLong();
+
+	@Test
+	public void releasesSlotsOfFailedAndEmptyRequests() throws InterruptedException
+	{
+		final ThroughputRunner.Daemon daemon = ThroughputRunner.Builder.create(() -> {
+			switch ((int) (calls.incrementAndGet() % 3))
+			{
+				case 0:
+					return Observable.error(new IllegalStateException("failed request"));
+				case 1:
+					return Observable.empty();
+				default:
+					return Observable.timer(1, TimeUnit.MILLISECONDS);
+			}
+		}).threads(4).stress(true).maxInFlight(MAX_IN_FLIGHT).testTimeInSeconds(0).histogram(false).graph(false) //
+				.printer((text, t) -> {
+				}).daemon();
+
+		daemon.start();
+		assertThat(watch(daemon, 1000)).isEqualTo(MAX_IN_FLIGHT);
+		daemon.stop();
+
+		assertThat(drained(daemon)).isTrue();
+		assertThat(calls.get()).isGreaterThan(100);
+	}
+
+	@Test
+	public void releasesSlotsOfNeverCompletingRequests() throws InterruptedException
+	{
+		// blocking clients end up waiting on requests that never complete, holding every slot
+		final ThroughputRunner.Daemon daemon = ThroughputRunner.Builder.create(
+				() -> calls.incrementAndGet() % 2 == 0 ? Observable.never() : Observable.error(new IllegalStateException(
+						"failed request"))).threads(MAX_IN_FLIGHT + 2).stress(false).maxInFlight(MAX_IN_FLIGHT) //
+				.testTimeInSeconds(0).histogram(false).graph(false).printer((text, t) -> {
+				}).daemon();
+
+		daemon.start();
+		assertThat(watch(daemon, 1000)).isEqualTo(MAX_IN_FLIGHT);
+		daemon.stop();
+
+		// the runner interrupts the blocked clients when they do not finish in time, unsubscribing their requests
+		assertThat(drained(daemon)).isTrue();
+	}
+
+	/**
+	 * @return the highest in-flight count seen.
+	 */
+	private int watch(final ThroughputRunner.Daemon daemon, final long millis) throws InterruptedException
+	{
+		final long end = System.currentTimeMillis() + millis;
+		int max = 0;
+		while (System.currentTimeMillis() < end)
+		{
+			max = Math.max(max, daemon.inFlight());
+			Thread.sleep(1);
+		}
+		return max;
+	}
+
+	private boolean drained(final ThroughputRunner.Daemon daemon) throws InterruptedException
+	{
+		final long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+		while (daemon.inFlight() > 0 && System.currentTimeMillis() < end)
+		{
+			Thread.sleep(10);
+		}
+		return daemon.inFlight() == 0;
+	}
+}
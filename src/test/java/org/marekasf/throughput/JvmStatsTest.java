@@ -0,0 +1,56 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.throughput;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+import org.marekasf.troughput.ThroughputRunner;
+
+import rx.Observable;
+
+public class JvmStatsTest
+{
+	@Test
+	public void reportsGcAndAllocationPerSampleAndRun()
+	{
+		final StringBuilder report = new StringBuilder();
+		ThroughputRunner.Builder.create(() -> Observable.just(new byte[10_000])) //
+				.threads(2) //
+				.stress(false) //
+				.testTimeInSeconds(2) //
+				.histogram(false) //
+				.graph(false) //
+				.printer((text, t) -> report.append(text).append('\n')) //
+				.run();
+
+		assertThat(report.toString()).contains(" - sample rate   : ");
+		assertThat(report.toString()).contains(" - gc            : ");
+		assertThat(report.toString()).contains(" - heap used     : ");
+		assertThat(report.toString()).contains("% of the run");
+		final Matcher allocation = Pattern.compile("allocation    : (\\d+) bytes/request").matcher(report);
+		if (allocation.find())
+		{
+			// every request allocates its array
+			assertThat(Long.parseLong(allocation.group(1))).isGreaterThan(10_000);
+		}
+		else
+		{
+			assertThat(report.toString()).contains("allocation    : n/a");
+		}
+	}
+}
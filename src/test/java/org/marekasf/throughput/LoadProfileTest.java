@@ -0,0 +1,65 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.throughput;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.marekasf.troughput.LoadProfile;
+import org.marekasf.troughput.ThroughputResult;
+import org.marekasf.troughput.histogram.AdaptiveHistogram;
+
+public class LoadProfileTest
+{
+	@Test
+	public void doubling()
+	{
+		final LoadProfile profile = LoadProfile.doubling(12);
+
+		assertThat(profile.stages()).isEqualTo(5);
+		assertThat(profile.threads(0, 0)).isEqualTo(1);
+		assertThat(profile.threads(3, 0)).isEqualTo(8);
+		assertThat(profile.threads(4, 0)).isEqualTo(12);
+	}
+
+	@Test
+	public void saturation()
+	{
+		final LoadProfile profile = LoadProfile.doubling(16).p99Target(30, TimeUnit.MILLISECONDS);
+		final List<ThroughputResult> stages = Arrays.asList( //
+				stage(1, 100, 10), //
+				stage(2, 200, 11), //
+				stage(4, 390, 14), //
+				stage(8, 400, 28), //
+				stage(16, 405, 60));
+
+		assertThat(profile.saturationStage(stages)).isEqualTo(2);
+		assertThat(profile.maxSustainableStage(stages)).isEqualTo(3);
+		assertThat(profile.saturationStage(stages.subList(0, 3))).isEqualTo(-1);
+	}
+
+	private ThroughputResult stage(final int threads, final long requestsPerSecond, final long p99Ms)
+	{
+		final AdaptiveHistogram histogram = new AdaptiveHistogram();
+		for (int i = 0; i < 100; ++i)
+		{
+			histogram.addValue(TimeUnit.MILLISECONDS.toNanos(i < 99 ? p99Ms / 2 : p99Ms));
+		}
+		return new ThroughputResult(threads, 0, TimeUnit.SECONDS.toNanos(1), requestsPerSecond, 0, 0, 0, histogram);
+	}
+}
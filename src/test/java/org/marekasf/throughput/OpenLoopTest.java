@@ -0,0 +1,81 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.throughput;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+import org.marekasf.troughput.ThroughputResult;
+import org.marekasf.troughput.ThroughputRunner;
+
+import rx.Observable;
+
+/**
+ * A single client at a fixed rate, with an action that stalls periodically. The requests scheduled during a stall
+ * start late: the latency from the intended start shows the stall, the service time from the actual start does not.
+ */
+public class OpenLoopTest
+{
+	private static final double RATE = 100;
+	private static final int STALL_EVERY = 50;
+	private static final long STALL_MS = 100;
+
+	private final AtomicLong calls = new AtomicLong();
+
+	@Test
+	public void intendedStartShowsStallsServiceTimeDoesNot()
+	{
+		final StringBuilder report = new StringBuilder();
+		final ThroughputResult result = ThroughputRunner.Builder.create(() -> Observable.defer(this::stallPeriodically)) //
+				.threads(1) //
+				.stress(false) //
+				.rate(RATE) //
+				.testTimeInSeconds(3) //
+				.graph(false) //
+				.printer((text, t) -> report.append(text).append('\n')) //
+				.run();
+
+		// ~10 requests of every 50 are scheduled during a 100 ms stall and wait for it
+		final double intendedP90 = result.getValueForPercentile(90) / 1e6;
+		final String service = report.substring(report.indexOf("service time from actual start"));
+		final Matcher p90 = Pattern.compile(" 90%: ([0-9.E-]+) ms").matcher(service);
+		assertThat(p90.find()).isTrue();
+		final double serviceP90 = Double.parseDouble(p90.group(1));
+
+		assertThat(intendedP90).isGreaterThan(20);
+		assertThat(serviceP90).isLessThan(5);
+		// the client catches up after every stall, so the timeline is kept
+		assertThat(result.getRequestRate()).isGreaterThan(0.9 * RATE).isLessThan(1.1 * RATE);
+	}
+
+	private Observable<Boolean> stallPeriodically()
+	{
+		if (calls.incrementAndGet() % STALL_EVERY == 0)
+		{
+			try
+			{
+				Thread.sleep(STALL_MS);
+			}
+			catch (InterruptedException e)
+			{
+				throw new RuntimeException("Client interrupted", e);
+			}
+		}
+		return Observable.just(true);
+	}
+}
@@ -0,0 +1,81 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.throughput;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+import org.marekasf.troughput.ThroughputRunner;
+
+import rx.Observable;
+
+/**
+ * Requests of about 5 ms reported in microseconds and in milliseconds.
+ */
+public class ReportUnitTest
+{
+	private static final long ACTION_TIME_MS = 5;
+
+	@Test
+	public void convertsToMicroseconds()
+	{
+		final String report = report(TimeUnit.MICROSECONDS);
+
+		assertThat(report).contains("TOTAL_EXEC_TIME_US: ");
+		assertThat(value(report, "avg exec time : ([0-9.E]+) us")).isGreaterThan(ACTION_TIME_MS * 1000).isLessThan(
+				ACTION_TIME_MS * 4000);
+		assertThat(value(report, " 50%: ([0-9.E]+) us")).isGreaterThan(ACTION_TIME_MS * 1000).isLessThan(
+				ACTION_TIME_MS * 4000);
+		// rates stay per second
+		assertThat(value(report, "request rate  : ([0-9.E]+) r/s")).isGreaterThan(50).isLessThan(200);
+	}
+
+	@Test
+	public void convertsToMilliseconds()
+	{
+		final String report = report(TimeUnit.MILLISECONDS);
+
+		assertThat(report).contains("TOTAL_EXEC_TIME_MS: ");
+		assertThat(value(report, "avg exec time : ([0-9.E]+) ms")).isGreaterThan(ACTION_TIME_MS).isLessThan(
+				ACTION_TIME_MS * 4);
+		assertThat(value(report, " 50%: ([0-9.E]+) ms")).isGreaterThan(ACTION_TIME_MS).isLessThan(ACTION_TIME_MS * 4);
+		assertThat(value(report, "request rate  : ([0-9.E]+) r/s")).isGreaterThan(50).isLessThan(200);
+	}
+
+	private String report(final TimeUnit unit)
+	{
+		final StringBuilder report = new StringBuilder();
+		ThroughputRunner.Builder.create(() -> Observable.timer(ACTION_TIME_MS, TimeUnit.MILLISECONDS)) //
+				.threads(1) //
+				.stress(false) //
+				.testTimeInSeconds(1) //
+				.graph(false) //
+				.reportUnit(unit) //
+				.printer((text, t) -> report.append(text).append('\n')) //
+				.run();
+		return report.toString();
+	}
+
+	private static double value(final String report, final String pattern)
+	{
+		// the final statistics follow the last sample
+		final Matcher matcher = Pattern.compile(pattern).matcher(report.substring(report.lastIndexOf("REQUESTS: ")));
+		assertThat(matcher.find()).isTrue();
+		return Double.parseDouble(matcher.group(1));
+	}
+}
@@ -0,0 +1,60 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.throughput;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.Test;
+import org.marekasf.troughput.ThroughputRunner;
+
+import rx.Observable;
+
+public class ScenarioTest
+{
+	@Test
+	public void runsWeightedMixWithPerActionStats()
+	{
+		final LongAdder reads = new LongAdder();
+		final LongAdder searches = new LongAdder();
+		final StringBuilder report = new StringBuilder();
+
+		ThroughputRunner.Builder.create() //
+				.action("read", 70, () -> count(reads)) //
+				.action("search", 25, () -> count(searches)) //
+				.action("write", 5, () -> Observable.error(new IllegalStateException("read only"))) //
+				.threads(2) //
+				.testTimeInSeconds(2) //
+				.graph(false) //
+				.printer((text, t) -> report.append(text).append('\n')) //
+				.run();
+
+		final double total = reads.doubleValue() + searches.doubleValue();
+		assertThat(total).isGreaterThan(1000);
+		assertThat(reads.doubleValue() / total).isGreaterThan(0.70 / 0.95 - 0.05).isLessThan(0.70 / 0.95 + 0.05);
+		assertThat(report.toString()).contains("  action                  weight   requests     errors   request r/s");
+		assertThat(report.toString()).contains("  read                     70.0%");
+		assertThat(report.toString()).contains("Main percentiles (action search):");
+		// errors are counted per action as well
+		assertThat(report.toString()).contains(" times : java.lang.IllegalStateException");
+		assertThat(report.toString()).doesNotMatch("(?s).*\n  write +5\\.0% +\\d+ +0 .*");
+	}
+
+	private Observable<?> count(final LongAdder counter)
+	{
+		counter.increment();
+		return Observable.just(1);
+	}
+}
@@ -0,0 +1,92 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.throughput;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+import org.marekasf.troughput.Slo;
+import org.marekasf.troughput.ThroughputResult;
+import org.marekasf.troughput.ThroughputRunner;
+
+import rx.Observable;
+
+public class SloTest
+{
+	@Test
+	public void abortsOnceLatencyObjectiveCannotBeMet()
+	{
+		final Slo p99 = Slo.percentileBelow(99, 5, TimeUnit.MILLISECONDS);
+		final StringBuilder report = new StringBuilder();
+		final long start = System.nanoTime();
+		final ThroughputResult result = builder(() -> Observable.timer(30, TimeUnit.MILLISECONDS), report) //
+				.slo(Slo.errorRateBelow(0.001)) //
+				.slo(p99) //
+				.run();
+
+		assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(10));
+		assertThat(result.isAborted()).isTrue();
+		assertThat(result.isSloMet()).isFalse();
+		assertThat(result.getSloViolations()).containsOnly(p99);
+		assertThat(result.getRequestCount()).isGreaterThan(0);
+		assertThat(report.toString()).contains("SLO BREACHED: p99 <= 5 ms cannot be met any more, aborting after ");
+		assertThat(report.toString()).contains("  FAILED p99 <= 5 ms");
+		assertThat(report.toString()).contains("  ok     error rate <= 0.1%");
+	}
+
+	@Test
+	public void abortsOnceErrorObjectiveCannotBeMet()
+	{
+		final ThroughputResult result = builder(() -> Observable.error(new IllegalStateException()), new StringBuilder()) //
+				.slo(Slo.errorRateBelow(0.01)) //
+				.run();
+
+		assertThat(result.isAborted()).isTrue();
+		assertThat(result.getTestTimeNs()).isLessThan(TimeUnit.SECONDS.toNanos(10));
+		assertThat(result.getSloViolations()).hasSize(1);
+	}
+
+	@Test
+	public void returnsResultMeetingObjectives()
+	{
+		final StringBuilder report = new StringBuilder();
+		final ThroughputResult result = builder(() -> Observable.just(1), report) //
+				.testTimeInSeconds(1) //
+				.slo(Slo.percentileBelow(99.9, 1, TimeUnit.SECONDS)) //
+				.slo(Slo.errorRateBelow(0.001)) //
+				.run();
+
+		assertThat(result.isAborted()).isFalse();
+		assertThat(result.isSloMet()).isTrue();
+		assertThat(result.getRequestCount()).isGreaterThan(100);
+		assertThat(result.getThreads()).isEqualTo(2);
+		assertThat(report.toString()).contains("SLO MET");
+		assertThat(report.toString()).contains("  ok     p99.9 <= 1 s");
+	}
+
+	private static ThroughputRunner.Builder builder(final Supplier<Observable<?>> action,
+			final StringBuilder report)
+	{
+		return ThroughputRunner.Builder.create(action) //
+				.threads(2) //
+				.stress(false) //
+				.testTimeInSeconds(30) //
+				.histogram(false) //
+				.graph(false) //
+				.printer((text, t) -> report.append(text).append('\n'));
+	}
+}
@@ -0,0 +1,72 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.throughput;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.marekasf.troughput.ThroughputResult;
+import org.marekasf.troughput.ThroughputRunner;
+import org.marekasf.troughput.histogram.Cell;
+
+import rx.Observable;
+
+/**
+ * An action that is slow for its first calls, like a service with cold caches: the auto warm-up waits for a steady
+ * request rate and the slow calls are left out of the results.
+ */
+public class WarmUpTest
+{
+	private static final int SLOW_CALLS = 100;
+	private static final long SLOW_MS = 20;
+
+	private final AtomicLong calls = new AtomicLong();
+
+	@Test
+	public void excludesWarmUpUntilSteadyState()
+	{
+		final StringBuilder report = new StringBuilder();
+		final ThroughputResult result = ThroughputRunner.Builder.create(() -> Observable.defer(this::slowThenFast)) //
+				.threads(2) //
+				.stress(false) //
+				.autoWarmUp(15) //
+				.testTimeInSeconds(2) //
+				.graph(false) //
+				.printer((text, t) -> report.append(text).append('\n')) //
+				.run();
+
+		assertThat(report.toString()).contains("steady state reached");
+		assertThat(calls.get()).isGreaterThan(SLOW_CALLS);
+		assertThat(result.getMaxRequestTimeNs()).isLessThan(TimeUnit.MILLISECONDS.toNanos(SLOW_MS));
+		// every request counted in the results is in the histogram, and no other
+		assertThat(result.getHistogram().toTable().stream().mapToLong((Cell c) -> c.count).sum()).isEqualTo(
+				result.getRequestCount());
+	}
+
+	private Observable<Boolean> slowThenFast()
+	{
+		try
+		{
+			Thread.sleep(calls.incrementAndGet() <= SLOW_CALLS ? SLOW_MS : 1);
+		}
+		catch (InterruptedException e)
+		{
+			throw new RuntimeException("Client interrupted", e);
+		}
+		return Observable.just(true);
+	}
+}
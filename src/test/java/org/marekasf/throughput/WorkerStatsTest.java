@@ -0,0 +1,93 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.marekasf.throughput;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+import org.marekasf.troughput.ThroughputRunner;
+
+import rx.Observable;
+
+public class WorkerStatsTest
+{
+	@Test
+	public void reportsEveryWorkerAndFairness()
+	{
+		final StringBuilder report = new StringBuilder();
+		ThroughputRunner.Builder.create(() -> Observable.timer(1, TimeUnit.MILLISECONDS)) //
+				.threads(3) //
+				.stress(false) //
+				.testTimeInSeconds(1) //
+				.histogram(false) //
+				.graph(false) //
+				.printer((text, t) -> report.append(text).append('\n')) //
+				.run();
+
+		final String workers = report.substring(report.indexOf("WORKERS 3"));
+		final Matcher rows = Pattern.compile("\n +([123]) +(\\d+) +0 +\\S+ +(\\d+\\.\\d+) ").matcher(workers);
+		int count = 0;
+		while (rows.find())
+		{
+			assertThat(Long.parseLong(rows.group(2))).isGreaterThan(100);
+			// the median request latency of a worker covers the 1 ms timer, not just the loop around it
+			assertThat(Double.parseDouble(rows.group(3))).isGreaterThanOrEqualTo(1.0);
+			++count;
+		}
+		assertThat(count).isEqualTo(3);
+		final Matcher fairness = Pattern.compile("fairness index : (\\d\\.\\d+)").matcher(workers);
+		assertThat(fairness.find()).isTrue();
+		// blocking clients waiting on the same timer complete about the same number of requests
+		assertThat(Double.parseDouble(fairness.group(1))).isGreaterThan(0.9);
+		assertThat(workers).doesNotContain("CPU-bound");
+	}
+
+	@Test
+	public void countsCompletionsInStressMode()
+	{
+		final StringBuilder report = new StringBuilder();
+		final AtomicLong calls = new AtomicLong();
+		ThroughputRunner.Builder.create(() -> calls.incrementAndGet() % 2 == 0 ? Observable.error(new IllegalStateException(
+				"every other request fails")) : Observable.timer(1, TimeUnit.MILLISECONDS)) //
+				.threads(2) //
+				.stress(true) //
+				.maxInFlight(50) //
+				.testTimeInSeconds(1) //
+				.histogram(false) //
+				.graph(false) //
+				.printer((text, t) -> report.append(text).append('\n')) //
+				.run();
+
+		final Matcher totals = Pattern.compile("REQUESTS: (\\d+), ERRORS: (\\d+)").matcher(report);
+		assertThat(totals.find()).isTrue();
+		final String workers = report.substring(report.indexOf("WORKERS 2"));
+		final Matcher rows = Pattern.compile("\n +[12] +(\\d+) +(\\d+) ").matcher(workers);
+		long requests = 0;
+		long errors = 0;
+		while (rows.find())
+		{
+			requests += Long.parseLong(rows.group(1));
+			errors += Long.parseLong(rows.group(2));
+		}
+		// asynchronous errors are attributed to the worker that subscribed
+		assertThat(errors).isPositive();
+		assertThat(requests).isEqualTo(Long.parseLong(totals.group(1)));
+		assertThat(errors).isEqualTo(Long.parseLong(totals.group(2)));
+	}
+}